@@ -0,0 +1,100 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.benchmarks;
+
+import org.springframework.boot.Banner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Starts the benchmark application with a given number of in-memory H2 datasources. The datasources
+ * are declared in a generated application.yml under "system.db.data-sources", exactly like an application
+ * would, and share the mapper group "bench". A dynamic routing datasource "dyn" defaults to "ds0".
+ */
+final class BenchmarkContexts {
+
+    private BenchmarkContexts() {
+    }
+
+    static ConfigurableApplicationContext start(int dataSourceCount) {
+        ClassLoader previous = Thread.currentThread().getContextClassLoader();
+        ClassLoader classLoader = configClassLoader(dataSourceCount);
+        Thread.currentThread().setContextClassLoader(classLoader);
+        try {
+            return new SpringApplicationBuilder(BenchmarkApplication.class)
+                    .resourceLoader(new DefaultResourceLoader(classLoader))
+                    .bannerMode(Banner.Mode.OFF)
+                    .logStartupInfo(false)
+                    .web(false)
+                    .run();
+        } finally {
+            Thread.currentThread().setContextClassLoader(previous);
+        }
+    }
+
+    /**
+     * The application.yml is only visible through the returned class loader, so contexts of different
+     * sizes can be started in the same JVM.
+     */
+    private static ClassLoader configClassLoader(int dataSourceCount) {
+        try {
+            File directory = Files.createTempDirectory("mds-benchmark").toFile();
+            directory.deleteOnExit();
+            File yml = new File(directory, "application.yml");
+            yml.deleteOnExit();
+            try (Writer writer = Files.newBufferedWriter(yml.toPath(), StandardCharsets.UTF_8)) {
+                writer.write(applicationYml(dataSourceCount));
+            }
+            return new URLClassLoader(new URL[]{directory.toURI().toURL()}, BenchmarkContexts.class.getClassLoader());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write the benchmark configuration", e);
+        }
+    }
+
+    static String applicationYml(int dataSourceCount) {
+        StringBuilder yml = new StringBuilder();
+        yml.append("spring:\n")
+                .append("  datasource:\n")
+                .append("    url: jdbc:h2:mem:main\n")
+                .append("system:\n")
+                .append("  db:\n")
+                .append("    data-sources:\n");
+        for (int i = 0; i < dataSourceCount; i++) {
+            yml.append("      - name: ds").append(i).append('\n')
+                    .append("        url: jdbc:h2:mem:ds").append(i).append('\n')
+                    .append("        type: com.zaxxer.hikari.HikariDataSource\n")
+                    .append("        mapper-group: bench\n")
+                    .append("        initialize: true\n")
+                    .append("        schema: [\"classpath:bench-schema.sql\"]\n")
+                    .append("        hikari:\n")
+                    .append("          minimum-idle: 2\n")
+                    .append("          maximum-pool-size: 16\n");
+        }
+        yml.append("    dynamic-routing:\n")
+                .append("      name: dyn\n")
+                .append("      default-target: ds0\n");
+        return yml.toString();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.benchmarks;
+
+import io.github.arvinrong.mds.springboot.autoconfiguration.MultiDataSourceContextHolder;
+import io.github.arvinrong.mds.springboot.autoconfiguration.MultiDataSourceHolder;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups in {@link MultiDataSourceHolder} and connections routed by the dynamic routing datasource,
+ * from many threads at once. The "churn" group looks up while one thread keeps adding and removing
+ * a datasource. Run with "-t" to change the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class HolderLookupBenchmark {
+    private static final int DATA_SOURCES = 16;
+
+    private ConfigurableApplicationContext context;
+    private MultiDataSourceHolder holder;
+    private DataSource dynamicRouting;
+    private String[] names;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContexts.start(DATA_SOURCES);
+        holder = context.getBean(MultiDataSourceHolder.class);
+        dynamicRouting = context.getBean("dyn", DataSource.class);
+        names = new String[DATA_SOURCES];
+        for (int i = 0; i < DATA_SOURCES; i++) {
+            names[i] = "ds" + i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        String name(String[] names) {
+            next = (next + 1) & (names.length - 1);
+            return names[next];
+        }
+    }
+
+    @Benchmark
+    public DataSource getDataSource(Cursor cursor) {
+        return holder.getDataSource(cursor.name(names));
+    }
+
+    @Benchmark
+    public SqlSessionFactory getSqlSessionFactory(Cursor cursor) {
+        return holder.getEntry(cursor.name(names)).getSqlSessionFactory();
+    }
+
+    @Benchmark
+    public Object getSqlSessionTemplateByBeanName(Cursor cursor) {
+        return holder.getSqlSessionTemplates().get(cursor.name(names) + "SqlSessionTemplate");
+    }
+
+    @Benchmark
+    public boolean routedConnection(Cursor cursor) throws SQLException {
+        MultiDataSourceContextHolder.push(cursor.name(names));
+        try (Connection connection = dynamicRouting.getConnection()) {
+            return connection.getAutoCommit();
+        } finally {
+            MultiDataSourceContextHolder.pop();
+        }
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(7)
+    public DataSource lookupDuringChanges(Cursor cursor) {
+        return holder.getDataSource(cursor.name(names));
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void addAndRemove() {
+        holder.addDataSource("churn", holder.getDataSource("ds0"));
+        holder.removeDataSource("churn");
+    }
+}
@@ -0,0 +1,66 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.benchmarks;
+
+import io.github.arvinrong.mds.springboot.autoconfiguration.MultiDataSourceContextHolder;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Mybatis select through the SqlSessionTemplate beans replaced by the post processors, directly and
+ * through the dynamic routing datasource.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlSessionTemplateBenchmark {
+    private ConfigurableApplicationContext context;
+    private SqlSessionTemplate template;
+    private SqlSessionTemplate dynamicTemplate;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContexts.start(2);
+        template = context.getBean("ds0SqlSessionTemplate", SqlSessionTemplate.class);
+        dynamicTemplate = context.getBean("dynSqlSessionTemplate", SqlSessionTemplate.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String selectOne() {
+        return template.selectOne("bench.selectValue", 1);
+    }
+
+    @Benchmark
+    public String selectOneRouted() {
+        MultiDataSourceContextHolder.push("ds1");
+        try {
+            return dynamicTemplate.selectOne("bench.selectValue", 1);
+        } finally {
+            MultiDataSourceContextHolder.pop();
+        }
+    }
+}
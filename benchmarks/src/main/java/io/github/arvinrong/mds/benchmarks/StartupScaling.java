@@ -0,0 +1,65 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.benchmarks;
+
+import io.github.arvinrong.mds.springboot.autoconfiguration.MultiDataSourceStartupTimeline;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.*;
+
+/**
+ * Boots contexts with a growing number of datasources and prints, per context size, the wall time and
+ * the time spent in every phase of the startup timeline, so the scaling curve of each phase is visible.
+ * The first size is booted once more beforehand to warm up the JVM.
+ * <pre>
+ * java -cp target/benchmarks.jar io.github.arvinrong.mds.benchmarks.StartupScaling 1 10 100
+ * </pre>
+ */
+public class StartupScaling {
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray() : new int[]{1, 10, 100};
+        BenchmarkContexts.start(sizes[0]).close();
+        Map<Integer, Map<String, Long>> phases = new LinkedHashMap<>();
+        Map<Integer, Long> wallTimes = new LinkedHashMap<>();
+        Set<String> phaseNames = new LinkedHashSet<>();
+        for (int size : sizes) {
+            long start = System.nanoTime();
+            ConfigurableApplicationContext context = BenchmarkContexts.start(size);
+            wallTimes.put(size, (System.nanoTime() - start) / 1_000_000);
+            MultiDataSourceStartupTimeline timeline = context.getBean(MultiDataSourceStartupTimeline.class);
+            phases.put(size, timeline.getPhaseTotals());
+            phaseNames.addAll(timeline.getPhaseTotals().keySet());
+            context.close();
+        }
+        System.out.printf("%-28s", "datasources");
+        for (int size : sizes) {
+            System.out.printf("%10d", size);
+        }
+        System.out.printf("%n%-28s", "startup ms");
+        for (int size : sizes) {
+            System.out.printf("%10d", wallTimes.get(size));
+        }
+        System.out.println();
+        for (String phase : phaseNames) {
+            System.out.printf("%-28s", phase + " ms");
+            for (int size : sizes) {
+                System.out.printf("%10d", phases.get(size).getOrDefault(phase, 0L));
+            }
+            System.out.println();
+        }
+    }
+}
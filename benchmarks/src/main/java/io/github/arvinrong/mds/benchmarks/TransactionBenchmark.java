@@ -0,0 +1,70 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.benchmarks;
+
+import org.mybatis.spring.SqlSessionTemplate;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Begin and commit on the transaction manager of a custom datasource, empty and around a Mybatis select.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark {
+    private ConfigurableApplicationContext context;
+    private TransactionTemplate transactionTemplate;
+    private TransactionTemplate readOnlyTransactionTemplate;
+    private SqlSessionTemplate template;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContexts.start(1);
+        PlatformTransactionManager transactionManager = context.getBean("ds0TransactionManager", PlatformTransactionManager.class);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTransactionTemplate.setReadOnly(true);
+        template = context.getBean("ds0SqlSessionTemplate", SqlSessionTemplate.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object emptyTransaction() {
+        return transactionTemplate.execute(status -> status);
+    }
+
+    @Benchmark
+    public String selectInTransaction() {
+        return transactionTemplate.execute(status -> template.selectOne("bench.selectValue", 1));
+    }
+
+    @Benchmark
+    public String selectInReadOnlyTransaction() {
+        return readOnlyTransactionTemplate.execute(status -> template.selectOne("bench.selectValue", 1));
+    }
+}
@@ -0,0 +1,2 @@
+create table if not exists bench(id int primary key, v varchar(32));
+merge into bench key(id) values(1, 'one');
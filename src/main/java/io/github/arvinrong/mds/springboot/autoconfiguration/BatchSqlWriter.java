@@ -0,0 +1,222 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Buffers the writes of a BATCH datasource and executes them as JDBC batches, each flush in a transaction of its own.
+ */
+public class BatchSqlWriter implements DisposableBean {
+    private static final Log logger = LogFactory.getLog(BatchSqlWriter.class);
+    public static final String BEAN_NAME_SUFFIX = "BatchSqlWriter";
+
+    private final String name;
+    private final SqlSessionFactory sqlSessionFactory;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Object flushMonitor = new Object();
+    private final Map<String, LongAdder> updateCounts = new ConcurrentHashMap<>();
+    private final TransactionTemplate flushTransaction;
+    private final ScheduledFuture<?> timer;
+    private List<Statement> pending;
+    private long oldestPendingNanos;
+    private RuntimeException timedFlushFailure;
+    private boolean closed;
+
+    BatchSqlWriter(String name, SqlSessionFactory sqlSessionFactory, int batchSize, long flushIntervalMillis, ScheduledExecutorService scheduler) {
+        this.name = name;
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.pending = new ArrayList<>(this.batchSize);
+        this.flushTransaction = new TransactionTemplate(
+                new DataSourceTransactionManager(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource()));
+        this.flushTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.timer = flushIntervalMillis > 0 && scheduler != null
+                ? scheduler.scheduleWithFixedDelay(this::flushIfDue, flushIntervalMillis, Math.max(1, flushIntervalMillis / 4), TimeUnit.MILLISECONDS)
+                : null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void insert(String statement, Object parameter) {
+        add(statement, parameter);
+    }
+
+    public void update(String statement, Object parameter) {
+        add(statement, parameter);
+    }
+
+    public void delete(String statement, Object parameter) {
+        add(statement, parameter);
+    }
+
+    private void add(String statement, Object parameter) {
+        boolean full;
+        synchronized (this) {
+            throwTimedFlushFailure();
+            if (closed) {
+                throw new IllegalStateException("BatchSqlWriter of " + name + " has been closed.");
+            }
+            if (pending.isEmpty()) {
+                oldestPendingNanos = System.nanoTime();
+            }
+            pending.add(new Statement(statement, parameter));
+            full = pending.size() >= batchSize;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return update counts by statement id since the writer was created
+     */
+    public Map<String, Long> getUpdateCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : updateCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    /**
+     * Executes the pending statements.
+     *
+     * @return the JDBC update counts of this flush by statement id, in execution order
+     */
+    public Map<String, int[]> flush() {
+        synchronized (this) {
+            throwTimedFlushFailure();
+        }
+        return doFlush();
+    }
+
+    private Map<String, int[]> doFlush() {
+        synchronized (flushMonitor) {
+            List<Statement> statements;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return Collections.emptyMap();
+                }
+                statements = pending;
+                pending = new ArrayList<>(batchSize);
+            }
+            // A flush triggered by add() would otherwise join the transaction of the caller.
+            List<BatchResult> results = flushTransaction.execute(status -> {
+                try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH, false)) {
+                    for (Statement statement : statements) {
+                        session.update(statement.id, statement.parameter);
+                    }
+                    List<BatchResult> batchResults = session.flushStatements();
+                    session.commit(true);
+                    return batchResults;
+                }
+            });
+            Map<String, int[]> counts = new LinkedHashMap<>();
+            for (BatchResult result : results) {
+                String id = result.getMappedStatement().getId();
+                int[] resultCounts = result.getUpdateCounts();
+                int[] previous = counts.get(id);
+                if (previous == null) {
+                    counts.put(id, resultCounts);
+                } else {
+                    int[] merged = Arrays.copyOf(previous, previous.length + resultCounts.length);
+                    System.arraycopy(resultCounts, 0, merged, previous.length, resultCounts.length);
+                    counts.put(id, merged);
+                }
+                LongAdder total = updateCounts.computeIfAbsent(id, key -> new LongAdder());
+                for (int count : resultCounts) {
+                    if (count > 0) {
+                        total.add(count);
+                    }
+                }
+            }
+            return counts;
+        }
+    }
+
+    private void flushIfDue() {
+        synchronized (this) {
+            if (pending.isEmpty() || System.nanoTime() - oldestPendingNanos < flushIntervalNanos) {
+                return;
+            }
+        }
+        try {
+            doFlush();
+        } catch (RuntimeException e) {
+            logger.error("Timed flush of BatchSqlWriter " + name + " failed.", e);
+            synchronized (this) {
+                timedFlushFailure = e;
+            }
+        }
+    }
+
+    private void throwTimedFlushFailure() {
+        RuntimeException failure = timedFlushFailure;
+        if (failure != null) {
+            timedFlushFailure = null;
+            throw new IllegalStateException("Timed flush of BatchSqlWriter " + name + " failed, the statements of that batch were not applied.", failure);
+        }
+    }
+
+    /**
+     * Flushes what is pending and stops the timer.
+     */
+    @Override
+    public void destroy() {
+        synchronized (this) {
+            closed = true;
+        }
+        if (timer != null) {
+            timer.cancel(false);
+        }
+        doFlush();
+    }
+
+    private static class Statement {
+        private final String id;
+        private final Object parameter;
+
+        Statement(String id, Object parameter) {
+            this.id = id;
+            this.parameter = parameter;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.InfrastructureProxy;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.HeuristicCompletionException;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.UnexpectedRollbackException;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.AbstractTransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Transaction manager spanning the datasources of a transaction chain, committed in reverse order on a best effort basis.
+ */
+public class ChainedTransactionManager implements PlatformTransactionManager {
+    private static final Log logger = LogFactory.getLog(ChainedTransactionManager.class);
+
+    private final String name;
+    private final List<String> dataSourceNames;
+    private final List<DataSourceTransactionManager> transactionManagers;
+
+    /**
+     * @param transactionManagers registered transaction managers of the datasources, in begin order
+     */
+    ChainedTransactionManager(String name, List<String> dataSourceNames, List<DataSourceTransactionManager> transactionManagers) {
+        this.name = name;
+        this.dataSourceNames = Collections.unmodifiableList(new ArrayList<>(dataSourceNames));
+        this.transactionManagers = new ArrayList<>(transactionManagers.size());
+        for (DataSourceTransactionManager transactionManager : transactionManagers) {
+            this.transactionManagers.add(lazyCopy(transactionManager));
+        }
+    }
+
+    private static DataSourceTransactionManager lazyCopy(DataSourceTransactionManager registered) {
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(new LazyTransactionDataSource(registered.getDataSource()));
+        transactionManager.setDefaultTimeout(registered.getDefaultTimeout());
+        transactionManager.setNestedTransactionAllowed(registered.isNestedTransactionAllowed());
+        transactionManager.setValidateExistingTransaction(registered.isValidateExistingTransaction());
+        transactionManager.setGlobalRollbackOnParticipationFailure(registered.isGlobalRollbackOnParticipationFailure());
+        transactionManager.setFailEarlyOnGlobalRollbackOnly(registered.isFailEarlyOnGlobalRollbackOnly());
+        transactionManager.setRollbackOnCommitFailure(registered.isRollbackOnCommitFailure());
+        transactionManager.setTransactionSynchronization(AbstractPlatformTransactionManager.SYNCHRONIZATION_NEVER);
+        return transactionManager;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getDataSourceNames() {
+        return dataSourceNames;
+    }
+
+    @Override
+    public TransactionStatus getTransaction(TransactionDefinition definition) throws TransactionException {
+        if (definition == null) {
+            definition = new DefaultTransactionDefinition();
+        }
+        List<TransactionStatus> statuses = new ArrayList<>(transactionManagers.size());
+        try {
+            for (DataSourceTransactionManager transactionManager : transactionManagers) {
+                statuses.add(transactionManager.getTransaction(definition));
+            }
+        } catch (RuntimeException | Error e) {
+            for (int i = statuses.size() - 1; i >= 0; i--) {
+                rollbackQuietly(i, statuses.get(i));
+            }
+            throw e;
+        }
+        // A transaction suspended by the first datasource took the synchronizations of the caller with it.
+        boolean newSynchronization = !TransactionSynchronizationManager.isSynchronizationActive();
+        if (newSynchronization) {
+            boolean actualTransaction = false;
+            for (TransactionStatus status : statuses) {
+                actualTransaction |= ((DefaultTransactionStatus) status).hasTransaction();
+            }
+            TransactionSynchronizationManager.setActualTransactionActive(actualTransaction);
+            TransactionSynchronizationManager.setCurrentTransactionIsolationLevel(
+                    definition.getIsolationLevel() != TransactionDefinition.ISOLATION_DEFAULT ? definition.getIsolationLevel() : null);
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(definition.isReadOnly());
+            TransactionSynchronizationManager.setCurrentTransactionName(definition.getName());
+            TransactionSynchronizationManager.initSynchronization();
+        }
+        return new ChainedTransactionStatus(statuses, newSynchronization, definition.isReadOnly());
+    }
+
+    @Override
+    public void commit(TransactionStatus status) throws TransactionException {
+        ChainedTransactionStatus chainedStatus = checkNotCompleted(status);
+        if (chainedStatus.isLocalRollbackOnly()) {
+            rollback(chainedStatus);
+            return;
+        }
+        // A participant marked a member rollback-only, committing the others would leave a mixed state.
+        if (chainedStatus.isGlobalRollbackOnly()) {
+            rollback(chainedStatus);
+            if (chainedStatus.isNewTransaction()) {
+                throw new UnexpectedRollbackException("Transaction rolled back because it has been marked as rollback-only");
+            }
+            return;
+        }
+        List<TransactionSynchronization> synchronizations = Collections.emptyList();
+        if (chainedStatus.newSynchronization) {
+            try {
+                TransactionSynchronizationUtils.triggerBeforeCommit(chainedStatus.readOnly);
+                TransactionSynchronizationUtils.triggerBeforeCompletion();
+            } catch (RuntimeException | Error e) {
+                rollback(chainedStatus);
+                throw e;
+            }
+            synchronizations = endSynchronization();
+        }
+        RuntimeException failure = null;
+        Error error = null;
+        boolean committed = false;
+        for (int i = transactionManagers.size() - 1; i >= 0; i--) {
+            TransactionStatus memberStatus = chainedStatus.statuses.get(i);
+            if (failure != null || error != null) {
+                rollbackQuietly(i, memberStatus);
+                continue;
+            }
+            try {
+                transactionManagers.get(i).commit(memberStatus);
+                committed = true;
+            } catch (RuntimeException e) {
+                failure = committed ? new HeuristicCompletionException(HeuristicCompletionException.STATE_MIXED, e) : e;
+            } catch (Error e) {
+                error = e;
+            }
+        }
+        chainedStatus.setCompleted();
+        if (failure == null && error == null) {
+            TransactionSynchronizationUtils.invokeAfterCommit(synchronizations);
+            TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, TransactionSynchronization.STATUS_COMMITTED);
+            return;
+        }
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations,
+                committed ? TransactionSynchronization.STATUS_UNKNOWN : TransactionSynchronization.STATUS_ROLLED_BACK);
+        if (error != null) {
+            throw error;
+        }
+        throw failure;
+    }
+
+    @Override
+    public void rollback(TransactionStatus status) throws TransactionException {
+        ChainedTransactionStatus chainedStatus = checkNotCompleted(status);
+        List<TransactionSynchronization> synchronizations = Collections.emptyList();
+        if (chainedStatus.newSynchronization) {
+            try {
+                TransactionSynchronizationUtils.triggerBeforeCompletion();
+            } finally {
+                synchronizations = endSynchronization();
+            }
+        }
+        RuntimeException failure = null;
+        for (int i = transactionManagers.size() - 1; i >= 0; i--) {
+            try {
+                transactionManagers.get(i).rollback(chainedStatus.statuses.get(i));
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    logger.error("Failed to roll back the transaction of DataSource " + dataSourceNames.get(i) + " in chain " + name, e);
+                }
+            }
+        }
+        chainedStatus.setCompleted();
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations,
+                failure == null ? TransactionSynchronization.STATUS_ROLLED_BACK : TransactionSynchronization.STATUS_UNKNOWN);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private ChainedTransactionStatus checkNotCompleted(TransactionStatus status) {
+        if (status.isCompleted()) {
+            throw new IllegalTransactionStateException(
+                    "Transaction is already completed - do not call commit or rollback more than once per transaction");
+        }
+        return (ChainedTransactionStatus) status;
+    }
+
+    /**
+     * Ends the synchronization of the chain, the first member to complete resumes a suspended transaction.
+     */
+    private static List<TransactionSynchronization> endSynchronization() {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clear();
+        return synchronizations;
+    }
+
+    private void rollbackQuietly(int index, TransactionStatus status) {
+        try {
+            transactionManagers.get(index).rollback(status);
+        } catch (RuntimeException | Error e) {
+            logger.error("Failed to roll back the transaction of DataSource " + dataSourceNames.get(index) + " in chain " + name, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ChainedTransactionManager " + name + " " + dataSourceNames;
+    }
+
+    private static class ChainedTransactionStatus extends AbstractTransactionStatus {
+        private final List<TransactionStatus> statuses;
+        private final boolean newSynchronization;
+        private final boolean readOnly;
+
+        ChainedTransactionStatus(List<TransactionStatus> statuses, boolean newSynchronization, boolean readOnly) {
+            this.statuses = statuses;
+            this.newSynchronization = newSynchronization;
+            this.readOnly = readOnly;
+        }
+
+        @Override
+        public boolean isNewTransaction() {
+            for (TransactionStatus status : statuses) {
+                if (status.isNewTransaction()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean isGlobalRollbackOnly() {
+            for (TransactionStatus status : statuses) {
+                if (((DefaultTransactionStatus) status).isGlobalRollbackOnly()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void flush() {
+            for (TransactionStatus status : statuses) {
+                status.flush();
+            }
+        }
+    }
+
+    /**
+     * Lazy connection proxy bound under the target datasource, where Mybatis and "{name}TransactionManager" look.
+     */
+    static class LazyTransactionDataSource extends DeferredDefaultsDataSourceProxy implements InfrastructureProxy {
+
+        LazyTransactionDataSource(DataSource target) {
+            setTargetDataSource(target);
+        }
+
+        @Override
+        public Object getWrappedObject() {
+            return getTargetDataSource();
+        }
+    }
+}
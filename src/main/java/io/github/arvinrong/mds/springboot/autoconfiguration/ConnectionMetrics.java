@@ -0,0 +1,63 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Acquire times, usage times and acquire timeouts of the connections of one pool.
+ */
+public class ConnectionMetrics {
+    private final LatencyHistogram acquireTime = new LatencyHistogram();
+    private final LatencyHistogram usageTime = new LatencyHistogram();
+    private final LongAdder timeouts = new LongAdder();
+    private final boolean acquireRecorded;
+
+    ConnectionMetrics(boolean acquireRecorded) {
+        this.acquireRecorded = acquireRecorded;
+    }
+
+    void recordAcquire(long nanos) {
+        acquireTime.record(nanos);
+    }
+
+    void recordUsage(long nanos) {
+        usageTime.record(nanos);
+    }
+
+    void recordTimeout() {
+        timeouts.increment();
+    }
+
+    /**
+     * @return whether the pool reports acquire times and timeouts, Tomcat only reports usage times
+     */
+    public boolean isAcquireRecorded() {
+        return acquireRecorded;
+    }
+
+    public LatencyHistogram getAcquireTime() {
+        return acquireTime;
+    }
+
+    public LatencyHistogram getUsageTime() {
+        return usageTime;
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Circuit breaker refusing the connections of a custom datasource after consecutive failed acquisitions.
+ */
+public class DataSourceCircuitBreaker {
+    private static final Log logger = LogFactory.getLog(DataSourceCircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean trialRunning = new AtomicBoolean();
+    private volatile boolean open;
+    private volatile long openedAt;
+
+    DataSourceCircuitBreaker(String name, int failureThreshold, long openDurationMillis) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDurationNanos = openDurationMillis * 1_000_000L;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        if (!open) {
+            return State.CLOSED;
+        }
+        return isOpen() ? State.OPEN : State.HALF_OPEN;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    /**
+     * @return true while connections are refused without trying the pool
+     */
+    boolean isOpen() {
+        return open && System.nanoTime() - openedAt < openDurationNanos;
+    }
+
+    Connection getConnection(DataSource dataSource) throws SQLException {
+        return getConnection(dataSource, null, null, false);
+    }
+
+    Connection getConnection(DataSource dataSource, String username, String password) throws SQLException {
+        return getConnection(dataSource, username, password, true);
+    }
+
+    private Connection getConnection(DataSource dataSource, String username, String password, boolean withCredentials) throws SQLException {
+        boolean trial = false;
+        if (open) {
+            if (isOpen() || !trialRunning.compareAndSet(false, true)) {
+                throw new SQLTransientConnectionException("Circuit breaker of DataSource " + name + " is open.");
+            }
+            trial = true;
+        }
+        try {
+            Connection connection = withCredentials ? dataSource.getConnection(username, password) : dataSource.getConnection();
+            recordSuccess();
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            recordFailure();
+            throw e;
+        } finally {
+            if (trial) {
+                trialRunning.set(false);
+            }
+        }
+    }
+
+    void recordSuccess() {
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+        if (open) {
+            open = false;
+            logger.info("Circuit breaker of DataSource " + name + " closed.");
+        }
+    }
+
+    void recordFailure() {
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            boolean wasOpen = open;
+            openedAt = System.nanoTime();
+            open = true;
+            if (!wasOpen) {
+                logger.warn("Circuit breaker of DataSource " + name + " opened after " + failureThreshold + " consecutive failures.");
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+/**
+ * Result of the last background probe of a custom datasource.
+ */
+public final class DataSourceHealth {
+
+    public enum Status {
+        UP, DOWN, UNKNOWN
+    }
+
+    private final String name;
+    private final Status status;
+    private final long checkedAt;
+    private final long latencyMillis;
+    private final String error;
+
+    DataSourceHealth(String name, Status status, long checkedAt, long latencyMillis, String error) {
+        this.name = name;
+        this.status = status;
+        this.checkedAt = checkedAt;
+        this.latencyMillis = latencyMillis;
+        this.error = error;
+    }
+
+    static DataSourceHealth unknown(String name) {
+        return new DataSourceHealth(name, Status.UNKNOWN, 0, 0, null);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return epoch millis of the probe, 0 if the datasource was never probed
+     */
+    public long getCheckedAt() {
+        return checkedAt;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    /**
+     * @return why the probe failed, {@code null} unless the status is DOWN
+     */
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + status + (error != null ? " (" + error + ")" : "");
+    }
+}
@@ -0,0 +1,154 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import javax.sql.DataSource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of one custom datasource pool, read live from the pool on every call.
+ */
+public class DataSourceMetrics implements DataSourceMetricsMXBean {
+    private final String name;
+    private final DataSource dataSource;
+    private final PoolStatistics statistics;
+
+    DataSourceMetrics(String name, DataSource dataSource) {
+        this.name = name;
+        this.dataSource = dataSource;
+        this.statistics = PoolStatistics.of(dataSource);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public PoolStatistics getPoolStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return acquire and usage times, {@code null} while the pool doesn't record them
+     */
+    public ConnectionMetrics getConnectionMetrics() {
+        return statistics.getConnectionMetrics();
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return statistics.getActiveConnections();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return statistics.getIdleConnections();
+    }
+
+    @Override
+    public int getTotalConnections() {
+        return statistics.getTotalConnections();
+    }
+
+    @Override
+    public int getPendingThreads() {
+        return statistics.getPendingThreads();
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        return statistics.getMaximumPoolSize();
+    }
+
+    @Override
+    public int getMinimumIdle() {
+        return statistics.getMinimumIdle();
+    }
+
+    @Override
+    public long getAcquireCount() {
+        LatencyHistogram acquireTime = getAcquireTime();
+        return acquireTime != null ? acquireTime.getCount() : -1;
+    }
+
+    @Override
+    public double getAcquireMeanMillis() {
+        LatencyHistogram acquireTime = getAcquireTime();
+        return acquireTime != null ? acquireTime.getMean(TimeUnit.MILLISECONDS) : -1;
+    }
+
+    @Override
+    public double getAcquire95thPercentileMillis() {
+        LatencyHistogram acquireTime = getAcquireTime();
+        return acquireTime != null ? acquireTime.getPercentile(0.95, TimeUnit.MILLISECONDS) : -1;
+    }
+
+    @Override
+    public double getAcquire99thPercentileMillis() {
+        LatencyHistogram acquireTime = getAcquireTime();
+        return acquireTime != null ? acquireTime.getPercentile(0.99, TimeUnit.MILLISECONDS) : -1;
+    }
+
+    @Override
+    public double getAcquireMaxMillis() {
+        LatencyHistogram acquireTime = getAcquireTime();
+        return acquireTime != null ? acquireTime.getMax(TimeUnit.MILLISECONDS) : -1;
+    }
+
+    @Override
+    public long getUsageCount() {
+        LatencyHistogram usageTime = getUsageTime();
+        return usageTime != null ? usageTime.getCount() : -1;
+    }
+
+    @Override
+    public double getUsageMeanMillis() {
+        LatencyHistogram usageTime = getUsageTime();
+        return usageTime != null ? usageTime.getMean(TimeUnit.MILLISECONDS) : -1;
+    }
+
+    @Override
+    public double getUsage95thPercentileMillis() {
+        LatencyHistogram usageTime = getUsageTime();
+        return usageTime != null ? usageTime.getPercentile(0.95, TimeUnit.MILLISECONDS) : -1;
+    }
+
+    @Override
+    public double getUsageMaxMillis() {
+        LatencyHistogram usageTime = getUsageTime();
+        return usageTime != null ? usageTime.getMax(TimeUnit.MILLISECONDS) : -1;
+    }
+
+    @Override
+    public long getTimeouts() {
+        ConnectionMetrics connectionMetrics = getConnectionMetrics();
+        return connectionMetrics != null && connectionMetrics.isAcquireRecorded() ? connectionMetrics.getTimeouts() : -1;
+    }
+
+    private LatencyHistogram getAcquireTime() {
+        ConnectionMetrics connectionMetrics = getConnectionMetrics();
+        return connectionMetrics != null && connectionMetrics.isAcquireRecorded() ? connectionMetrics.getAcquireTime() : null;
+    }
+
+    private LatencyHistogram getUsageTime() {
+        ConnectionMetrics connectionMetrics = getConnectionMetrics();
+        return connectionMetrics != null ? connectionMetrics.getUsageTime() : null;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+/**
+ * JMX view of {@link DataSourceMetrics}. Times are in milliseconds, -1 means the pool doesn't report the value.
+ */
+public interface DataSourceMetricsMXBean {
+
+    String getName();
+
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    int getTotalConnections();
+
+    int getPendingThreads();
+
+    int getMaximumPoolSize();
+
+    int getMinimumIdle();
+
+    long getAcquireCount();
+
+    double getAcquireMeanMillis();
+
+    double getAcquire95thPercentileMillis();
+
+    double getAcquire99thPercentileMillis();
+
+    double getAcquireMaxMillis();
+
+    long getUsageCount();
+
+    double getUsageMeanMillis();
+
+    double getUsage95thPercentileMillis();
+
+    double getUsageMaxMillis();
+
+    long getTimeouts();
+}
@@ -0,0 +1,79 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.ClassUtils;
+
+import javax.sql.DataSource;
+
+/**
+ * {@link LazyConnectionDataSourceProxy} that doesn't borrow a connection to read the defaults of its target.
+ */
+class DeferredDefaultsDataSourceProxy extends LazyConnectionDataSourceProxy {
+    private static final boolean HIKARI_PRESENT = ClassUtils.isPresent("com.zaxxer.hikari.HikariDataSource",
+            DeferredDefaultsDataSourceProxy.class.getClassLoader());
+    private static final boolean TOMCAT_PRESENT = ClassUtils.isPresent("org.apache.tomcat.jdbc.pool.DataSource",
+            DeferredDefaultsDataSourceProxy.class.getClassLoader());
+
+    @Override
+    public void afterPropertiesSet() {
+    }
+
+    /**
+     * @return the pool whose configuration supplies the defaults until a connection has been fetched
+     */
+    protected DataSource getDefaultsDataSource() {
+        return getTargetDataSource();
+    }
+
+    @Override
+    protected Boolean defaultAutoCommit() {
+        Boolean defaultAutoCommit = super.defaultAutoCommit();
+        if (defaultAutoCommit == null) {
+            defaultAutoCommit = configuredAutoCommit(getDefaultsDataSource());
+        }
+        return defaultAutoCommit != null ? defaultAutoCommit : Boolean.TRUE;
+    }
+
+    private static Boolean configuredAutoCommit(DataSource dataSource) {
+        if (dataSource instanceof LazyInitializingDataSource) {
+            dataSource = ((LazyInitializingDataSource) dataSource).getTargetIfInitialized();
+        }
+        if (dataSource instanceof DeferredDefaultsDataSourceProxy) {
+            return ((DeferredDefaultsDataSourceProxy) dataSource).defaultAutoCommit();
+        }
+        if (HIKARI_PRESENT && HikariDefaults.supports(dataSource)) {
+            return HikariDefaults.autoCommit(dataSource);
+        }
+        if (TOMCAT_PRESENT && dataSource instanceof org.apache.tomcat.jdbc.pool.DataSource) {
+            return ((org.apache.tomcat.jdbc.pool.DataSource) dataSource).getDefaultAutoCommit();
+        }
+        return null;
+    }
+
+    private static class HikariDefaults {
+
+        static boolean supports(DataSource dataSource) {
+            return dataSource instanceof HikariDataSource;
+        }
+
+        static Boolean autoCommit(DataSource dataSource) {
+            return ((HikariDataSource) dataSource).isAutoCommit();
+        }
+    }
+}
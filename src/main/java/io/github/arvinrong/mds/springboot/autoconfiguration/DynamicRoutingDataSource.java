@@ -0,0 +1,102 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.function.Supplier;
+
+/**
+ * DataSource routing to the datasource named on top of {@link MultiDataSourceContextHolder}.
+ */
+public class DynamicRoutingDataSource extends AbstractRoutingDataSource {
+    private String name;
+    private MultiDataSourceHolder multiDataSourceHolder;
+    private Supplier<DataSource> defaultTarget;
+    private String defaultTargetName;
+
+    public DynamicRoutingDataSource() {
+    }
+
+    DynamicRoutingDataSource(String name, MultiDataSourceHolder multiDataSourceHolder, Supplier<DataSource> defaultTarget, String defaultTargetName) {
+        this.name = name;
+        this.multiDataSourceHolder = multiDataSourceHolder;
+        this.defaultTarget = defaultTarget;
+        this.defaultTargetName = defaultTargetName;
+        setTargetDataSources(Collections.emptyMap());
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // Beans are registered with this class and replaced afterwards, the placeholder has no targets.
+        if (multiDataSourceHolder != null) {
+            super.afterPropertiesSet();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    String getDefaultTargetName() {
+        return defaultTargetName;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return MultiDataSourceContextHolder.peek();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        String key = MultiDataSourceContextHolder.peek();
+        DataSource dataSource = determineTargetDataSource(key);
+        DataSourceCircuitBreaker circuitBreaker = multiDataSourceHolder.getCircuitBreaker(key != null ? key : defaultTargetName);
+        return circuitBreaker != null ? circuitBreaker.getConnection(dataSource) : dataSource.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        String key = MultiDataSourceContextHolder.peek();
+        DataSource dataSource = determineTargetDataSource(key);
+        DataSourceCircuitBreaker circuitBreaker = multiDataSourceHolder.getCircuitBreaker(key != null ? key : defaultTargetName);
+        return circuitBreaker != null ? circuitBreaker.getConnection(dataSource, username, password) : dataSource.getConnection(username, password);
+    }
+
+    @Override
+    protected DataSource determineTargetDataSource() {
+        return determineTargetDataSource(MultiDataSourceContextHolder.peek());
+    }
+
+    private DataSource determineTargetDataSource(String key) {
+        if (key == null) {
+            DataSource dataSource = defaultTarget.get();
+            if (dataSource == null) {
+                throw new IllegalStateException("No target DataSource selected for " + name + " and no default target configured.");
+            }
+            return dataSource;
+        }
+        DataSource dataSource = multiDataSourceHolder.getDataSource(key);
+        if (dataSource == null || dataSource == this) {
+            throw new IllegalStateException("Cannot route " + name + " to unknown DataSource: " + key);
+        }
+        return dataSource;
+    }
+}
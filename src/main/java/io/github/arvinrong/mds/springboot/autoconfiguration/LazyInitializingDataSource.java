@@ -0,0 +1,151 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.util.ReflectionUtils;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+/**
+ * DataSource of a lazy custom datasource, the pool is created on the first connection request.
+ */
+public class LazyInitializingDataSource extends AbstractDataSource implements Closeable {
+    private static final Log logger = LogFactory.getLog(LazyInitializingDataSource.class);
+    private final Object monitor = new Object();
+    private volatile DataSource target;
+    private volatile boolean closed = false;
+    private String name;
+    private Callable<DataSource> targetFactory;
+    private Consumer<DataSource> targetCustomizer;
+
+    public LazyInitializingDataSource() {
+    }
+
+    LazyInitializingDataSource(String name, Callable<DataSource> targetFactory) {
+        this.name = name;
+        this.targetFactory = targetFactory;
+    }
+
+    void setTargetCustomizer(Consumer<DataSource> targetCustomizer) {
+        this.targetCustomizer = targetCustomizer;
+    }
+
+    /**
+     * Runs the customizer after the ones added before, right away if the pool exists already.
+     */
+    void addTargetCustomizer(Consumer<DataSource> customizer) {
+        synchronized (monitor) {
+            if (target != null) {
+                customizer.accept(target);
+            } else {
+                targetCustomizer = targetCustomizer != null ? targetCustomizer.andThen(customizer) : customizer;
+            }
+        }
+    }
+
+    public boolean isInitialized() {
+        return target != null;
+    }
+
+    /**
+     * @return the pool if it has been created already, {@code null} otherwise
+     */
+    public DataSource getTargetIfInitialized() {
+        return target;
+    }
+
+    public DataSource getTarget() {
+        DataSource dataSource = target;
+        if (dataSource == null) {
+            synchronized (monitor) {
+                dataSource = target;
+                if (dataSource == null) {
+                    if (closed) {
+                        throw new IllegalStateException("Lazy DataSource " + name + " has been closed.");
+                    }
+                    if (targetFactory == null) {
+                        throw new IllegalStateException("No DataSource factory found for lazy DataSource " + name);
+                    }
+                    try {
+                        dataSource = targetFactory.call();
+                    } catch (Exception e) {
+                        throw new IllegalStateException("============ Failed to create lazy DataSource: " + name, e);
+                    }
+                    if (targetCustomizer != null) {
+                        targetCustomizer.accept(dataSource);
+                    }
+                    logger.info("Lazy DataSource " + name + " initialized on first use.");
+                    target = dataSource;
+                }
+            }
+        }
+        return dataSource;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return getTarget().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getTarget().getConnection(username, password);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        return getTarget().unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || getTarget().isWrapperFor(iface);
+    }
+
+    @Override
+    public void close() {
+        synchronized (monitor) {
+            closed = true;
+            DataSource dataSource = target;
+            if (dataSource == null) {
+                return;
+            }
+            target = null;
+            Method closeMethod = ReflectionUtils.findMethod(dataSource.getClass(), "close");
+            if (closeMethod != null) {
+                ReflectionUtils.invokeMethod(closeMethod, dataSource);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LazyInitializingDataSource (" + name + (isInitialized() ? ", initialized)" : ")");
+    }
+}
@@ -0,0 +1,198 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.ibatis.session.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * SqlSessionFactory of a lazy custom datasource, parsing its mappers on first use.
+ */
+public class LazyInitializingSqlSessionFactory implements SqlSessionFactory {
+    private final Object monitor = new Object();
+    private final String name;
+    private final Callable<SqlSessionFactory> targetFactory;
+    private volatile SqlSessionFactory target;
+    private DeferredConfiguration deferredConfiguration;
+
+    LazyInitializingSqlSessionFactory(String name, Callable<SqlSessionFactory> targetFactory) {
+        this.name = name;
+        this.targetFactory = targetFactory;
+    }
+
+    public boolean isInitialized() {
+        return target != null;
+    }
+
+    public SqlSessionFactory getTarget() {
+        SqlSessionFactory sqlSessionFactory = target;
+        if (sqlSessionFactory == null) {
+            synchronized (monitor) {
+                sqlSessionFactory = target;
+                if (sqlSessionFactory == null) {
+                    try {
+                        sqlSessionFactory = targetFactory.call();
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Mybatis for multi datasource failed to be initialized: " + name, e);
+                    }
+                    if (deferredConfiguration != null) {
+                        Configuration configuration = sqlSessionFactory.getConfiguration();
+                        for (Class<?> type : deferredConfiguration.mappers) {
+                            if (!configuration.hasMapper(type)) {
+                                configuration.addMapper(type);
+                            }
+                        }
+                    }
+                    target = sqlSessionFactory;
+                }
+            }
+        }
+        return sqlSessionFactory;
+    }
+
+    @Override
+    public SqlSession openSession() {
+        return getTarget().openSession();
+    }
+
+    @Override
+    public SqlSession openSession(boolean autoCommit) {
+        return getTarget().openSession(autoCommit);
+    }
+
+    @Override
+    public SqlSession openSession(Connection connection) {
+        return getTarget().openSession(connection);
+    }
+
+    @Override
+    public SqlSession openSession(TransactionIsolationLevel level) {
+        return getTarget().openSession(level);
+    }
+
+    @Override
+    public SqlSession openSession(ExecutorType execType) {
+        return getTarget().openSession(execType);
+    }
+
+    @Override
+    public SqlSession openSession(ExecutorType execType, boolean autoCommit) {
+        return getTarget().openSession(execType, autoCommit);
+    }
+
+    @Override
+    public SqlSession openSession(ExecutorType execType, TransactionIsolationLevel level) {
+        return getTarget().openSession(execType, level);
+    }
+
+    @Override
+    public SqlSession openSession(ExecutorType execType, Connection connection) {
+        return getTarget().openSession(execType, connection);
+    }
+
+    /**
+     * @return the configuration of the target, or a placeholder recording mappers if it isn't initialized yet
+     */
+    @Override
+    public Configuration getConfiguration() {
+        SqlSessionFactory sqlSessionFactory = target;
+        if (sqlSessionFactory != null) {
+            return sqlSessionFactory.getConfiguration();
+        }
+        synchronized (monitor) {
+            if (target != null) {
+                return target.getConfiguration();
+            }
+            if (deferredConfiguration == null) {
+                deferredConfiguration = new DeferredConfiguration();
+            }
+            return deferredConfiguration;
+        }
+    }
+
+    /**
+     * Takes the mappers MapperFactoryBean registers at startup, its mappers initialize the factory when called.
+     */
+    private class DeferredConfiguration extends Configuration {
+        private final Set<Class<?>> mappers = new LinkedHashSet<>();
+
+        @Override
+        public <T> void addMapper(Class<T> type) {
+            synchronized (monitor) {
+                if (target != null) {
+                    target.getConfiguration().addMapper(type);
+                } else {
+                    mappers.add(type);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasMapper(Class<?> type) {
+            synchronized (monitor) {
+                return target != null ? target.getConfiguration().hasMapper(type) : mappers.contains(type);
+            }
+        }
+
+        @Override
+        public <T> T getMapper(Class<T> type, SqlSession sqlSession) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new DeferredMapper<>(type, sqlSession)));
+        }
+    }
+
+    private class DeferredMapper<T> implements InvocationHandler {
+        private final Class<T> type;
+        private final SqlSession sqlSession;
+        private volatile T mapper;
+
+        DeferredMapper(Class<T> type, SqlSession sqlSession) {
+            this.type = type;
+            this.sqlSession = sqlSession;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "Deferred mapper " + type.getName() + " of " + name;
+                }
+            }
+            T target = mapper;
+            if (target == null) {
+                target = getTarget().getConfiguration().getMapper(type, sqlSession);
+                mapper = target;
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
@@ -17,9 +17,12 @@ package io.github.arvinrong.mds.springboot.autoconfiguration;
 
 import org.mybatis.spring.boot.autoconfigure.MybatisAutoConfiguration;
 import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -27,12 +30,14 @@ import org.springframework.context.annotation.Import;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
 
 import javax.sql.DataSource;
+import java.util.List;
 
 @Configuration
 @ConditionalOnClass({DataSource.class, EmbeddedDatabaseType.class})
 @EnableConfigurationProperties(MultiDataSourceProperties.class)
 @AutoConfigureAfter(value = {MybatisAutoConfiguration.class})
-@Import({MultiDataSourceBuilder.Tomcat.class, MultiDataSourceBuilder.Hikari.class, MultiDataSourceInitializerPostProcessor.Registrar.class})
+@Import({MultiDataSourceBuilder.Tomcat.class, MultiDataSourceBuilder.Hikari.class, MultiDataSourceInitializerPostProcessor.Registrar.class,
+        MultiDataSourceRoutingConfiguration.class})
 public class MultiDataSourceAutoConfiguration {
 
     @Bean
@@ -48,4 +53,38 @@ public class MultiDataSourceAutoConfiguration {
         return new MultiDataSourceInitializer(multiDataSourceHolder, beanFactory);
     }
 
+    @Bean
+    @ConditionalOnMissingBean
+    public MultiDataSourceManager multiDataSourceManager(MultiDataSourceInitializer multiDataSourceInitializer, MultiDataSourceHolder multiDataSourceHolder,
+                                                         ConfigurableListableBeanFactory beanFactory) {
+        return new MultiDataSourceManager(multiDataSourceInitializer, multiDataSourceHolder, beanFactory);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public MultiDataSourceWarmUp multiDataSourceWarmUp(MultiDataSourceHolder multiDataSourceHolder, ConfigurableListableBeanFactory beanFactory) {
+        return new MultiDataSourceWarmUp(multiDataSourceHolder, MultiDataSourceStartupTimeline.of(beanFactory));
+    }
+
+    @Bean
+    public MultiDataSourceStartupTimeline.Reporter multiDataSourceStartupTimelineReporter(MultiDataSourceProperties properties,
+                                                                                          ConfigurableListableBeanFactory beanFactory) {
+        return new MultiDataSourceStartupTimeline.Reporter(MultiDataSourceStartupTimeline.of(beanFactory), properties.getStartupTimeline());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = MultiDataSourceProperties.MULTI_DATA_SOURCE_PREFIX + ".health", name = "enabled", havingValue = "true")
+    public MultiDataSourceHealth multiDataSourceHealth(MultiDataSourceHolder multiDataSourceHolder) {
+        return new MultiDataSourceHealth(multiDataSourceHolder);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = MultiDataSourceProperties.MULTI_DATA_SOURCE_PREFIX + ".metrics", name = "enabled", havingValue = "true")
+    public MultiDataSourceMetrics multiDataSourceMetrics(MultiDataSourceHolder multiDataSourceHolder,
+                                                         ObjectProvider<List<MultiDataSourceMetricsExporter>> exporters) {
+        return new MultiDataSourceMetrics(multiDataSourceHolder, exporters.getIfAvailable());
+    }
+
 }
@@ -0,0 +1,393 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.builder.xml.XMLMapperEntityResolver;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.parsing.XNode;
+import org.apache.ibatis.parsing.XPathParser;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.TypeAliasRegistry;
+import org.springframework.core.io.Resource;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * Bounded second level cache of one mapper namespace of one datasource.
+ */
+public class MultiDataSourceCache implements Cache, MultiDataSourceCacheMXBean {
+    private static final ThreadLocal<Context> BUILDING = new ThreadLocal<>();
+    private static final String DEFAULT_CACHE_ALIAS = "PERPETUAL";
+    private static final String[] CACHE_ATTRIBUTES = {"size", "flushInterval", "eviction", "readOnly", "blocking"};
+
+    private final String id;
+    private final String dataSourceName;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final boolean serialized;
+    private final boolean offHeap;
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long puts;
+    private long evictions;
+    private long expirations;
+
+    public MultiDataSourceCache(String id) {
+        Context context = BUILDING.get();
+        MultiDataSourceProperties.Cache settings = context != null ? context.settings : new MultiDataSourceProperties.Cache();
+        Properties attributes = context != null ? context.attributes.get(id) : null;
+        if (attributes == null) {
+            attributes = new Properties();
+        }
+        this.id = id;
+        this.dataSourceName = context != null ? context.dataSourceName : null;
+        this.maxEntries = Math.max(1, Integer.parseInt(attributes.getProperty("size", String.valueOf(settings.getMaxEntries()))));
+        this.maxBytes = settings.getMaxBytes();
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(attributes.getProperty("flushInterval", String.valueOf(settings.getTtl()))));
+        this.offHeap = settings.isOffHeap();
+        this.serialized = offHeap || !Boolean.parseBoolean(attributes.getProperty("readOnly", String.valueOf(settings.isReadOnly())));
+        if (context != null) {
+            context.caches.add(this);
+        }
+    }
+
+    /**
+     * Builds a SqlSessionFactory whose mappers declaring a cache without a type get a {@link MultiDataSourceCache}.
+     *
+     * @param mappers the mapper resources, read for the attributes of their cache elements
+     * @param caches  receives the caches created
+     */
+    static <T> T build(String dataSourceName, MultiDataSourceProperties.Cache settings, Resource[] mappers,
+                       List<MultiDataSourceCache> caches, Callable<T> build) throws Exception {
+        Context previous = BUILDING.get();
+        BUILDING.set(new Context(dataSourceName, settings, readCacheAttributes(dataSourceName, mappers), caches));
+        try {
+            return build.call();
+        } finally {
+            if (previous != null) {
+                BUILDING.set(previous);
+            } else {
+                BUILDING.remove();
+            }
+        }
+    }
+
+    /**
+     * Reads the attributes of the untyped cache elements by namespace, failing on those the cache can't honor.
+     */
+    private static Map<String, Properties> readCacheAttributes(String dataSourceName, Resource[] mappers) {
+        Map<String, Properties> attributes = new HashMap<>();
+        if (mappers == null) {
+            return attributes;
+        }
+        for (Resource mapper : mappers) {
+            XNode root;
+            try (InputStream input = mapper.getInputStream()) {
+                root = new XPathParser(input, false, null, new XMLMapperEntityResolver()).evalNode("/mapper");
+            } catch (IOException e) {
+                throw new IllegalStateException("============ Failed to read mapper " + mapper + " of DataSource " + dataSourceName, e);
+            }
+            XNode cache = root != null ? root.evalNode("cache") : null;
+            String type = cache != null ? cache.getStringAttribute("type", DEFAULT_CACHE_ALIAS) : null;
+            if (cache == null || !DEFAULT_CACHE_ALIAS.equalsIgnoreCase(type)) {
+                continue;
+            }
+            String namespace = root.getStringAttribute("namespace");
+            Properties values = new Properties();
+            for (String name : CACHE_ATTRIBUTES) {
+                String value = cache.getStringAttribute(name);
+                if (value != null) {
+                    values.setProperty(name, value);
+                }
+            }
+            String eviction = values.getProperty("eviction", "LRU");
+            if (!"LRU".equalsIgnoreCase(eviction)) {
+                throw new IllegalStateException("============ Failed to build the cache of mapper " + namespace + " of DataSource "
+                        + dataSourceName + ", eviction " + eviction + " isn't supported, the cache evicts the least recently used entries.");
+            }
+            if (Boolean.parseBoolean(values.getProperty("blocking"))) {
+                throw new IllegalStateException("============ Failed to build the cache of mapper " + namespace + " of DataSource "
+                        + dataSourceName + ", blocking caches aren't supported.");
+            }
+            attributes.put(namespace, values);
+        }
+        return attributes;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getDataSourceName() {
+        return dataSourceName;
+    }
+
+    @Override
+    public void putObject(Object key, Object value) {
+        Entry entry = new Entry(store(value), ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0);
+        synchronized (this) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                bytes -= previous.size;
+            }
+            bytes += entry.size;
+            puts++;
+            while (entries.size() > maxEntries || (maxBytes > 0 && bytes > maxBytes && !entries.isEmpty())) {
+                Iterator<Entry> eldest = entries.values().iterator();
+                bytes -= eldest.next().size;
+                eldest.remove();
+                evictions++;
+            }
+        }
+    }
+
+    @Override
+    public Object getObject(Object key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.expiresAt != 0 && entry.expiresAt - System.nanoTime() <= 0) {
+                entries.remove(key);
+                bytes -= entry.size;
+                expirations++;
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        // Evicted buffers are left to the garbage collector, reading one outside of the lock is safe.
+        return load(entry);
+    }
+
+    @Override
+    public synchronized Object removeObject(Object key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.size;
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public ReadWriteLock getReadWriteLock() {
+        return null;
+    }
+
+    @Override
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    @Override
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    @Override
+    public synchronized double getHitRatio() {
+        return hits + misses > 0 ? (double) hits / (hits + misses) : 0;
+    }
+
+    @Override
+    public synchronized long getPutCount() {
+        return puts;
+    }
+
+    @Override
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized long getExpirationCount() {
+        return expirations;
+    }
+
+    private Object store(Object value) {
+        if (!serialized) {
+            return value;
+        }
+        if (value != null && !(value instanceof Serializable)) {
+            throw new CacheException("Cache " + id + " of " + dataSourceName + " failed to make a copy of a non-serializable object: " + value);
+        }
+        byte[] data;
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOutput = new ObjectOutputStream(output)) {
+                objectOutput.writeObject(value);
+            }
+            data = output.toByteArray();
+        } catch (IOException e) {
+            throw new CacheException("Error serializing object. Cause: " + e, e);
+        }
+        if (!offHeap) {
+            return data;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data);
+        buffer.flip();
+        return buffer;
+    }
+
+    private Object load(Entry entry) {
+        if (!serialized) {
+            return entry.value;
+        }
+        byte[] data;
+        if (entry.value instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) entry.value).duplicate();
+            data = new byte[buffer.remaining()];
+            buffer.get(data);
+        } else {
+            data = (byte[]) entry.value;
+        }
+        try (ObjectInputStream input = new ResourcesObjectInputStream(new ByteArrayInputStream(data))) {
+            return input.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new CacheException("Error deserializing object. Cause: " + e, e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other || (other instanceof Cache && id.equals(((Cache) other).getId()));
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    private static class Entry {
+        final Object value;
+        final long size;
+        final long expiresAt;
+
+        Entry(Object value, long expiresAt) {
+            this.value = value;
+            this.size = value instanceof byte[] ? ((byte[]) value).length
+                    : value instanceof ByteBuffer ? ((ByteBuffer) value).capacity() : 0;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class Context {
+        final String dataSourceName;
+        final MultiDataSourceProperties.Cache settings;
+        final Map<String, Properties> attributes;
+        final List<MultiDataSourceCache> caches;
+
+        Context(String dataSourceName, MultiDataSourceProperties.Cache settings, Map<String, Properties> attributes,
+                List<MultiDataSourceCache> caches) {
+            this.dataSourceName = dataSourceName;
+            this.settings = settings;
+            this.attributes = attributes;
+            this.caches = caches;
+        }
+    }
+
+    /**
+     * Resolves classes like Mybatis does for its own serialized cache.
+     */
+    private static class ResourcesObjectInputStream extends ObjectInputStream {
+
+        ResourcesObjectInputStream(InputStream input) throws IOException {
+            super(input);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws ClassNotFoundException {
+            return Resources.classForName(desc.getName());
+        }
+    }
+
+    /**
+     * Configuration resolving the default cache type "PERPETUAL" to {@link MultiDataSourceCache}.
+     */
+    static class CachingConfiguration extends Configuration {
+        private final TypeAliasRegistry cachingTypeAliasRegistry = new CachingTypeAliasRegistry(super.getTypeAliasRegistry());
+
+        @Override
+        public TypeAliasRegistry getTypeAliasRegistry() {
+            return cachingTypeAliasRegistry;
+        }
+    }
+
+    private static class CachingTypeAliasRegistry extends TypeAliasRegistry {
+        private final TypeAliasRegistry delegate;
+
+        CachingTypeAliasRegistry(TypeAliasRegistry delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> Class<T> resolveAlias(String string) {
+            if (DEFAULT_CACHE_ALIAS.equalsIgnoreCase(string)) {
+                return (Class<T>) MultiDataSourceCache.class;
+            }
+            return delegate.resolveAlias(string);
+        }
+
+        /**
+         * All other registration methods end up here, the aliases of the super constructor are kept to itself.
+         */
+        @Override
+        public void registerAlias(String alias, Class<?> value) {
+            if (delegate != null) {
+                delegate.registerAlias(alias, value);
+            } else {
+                super.registerAlias(alias, value);
+            }
+        }
+
+        @Override
+        public Map<String, Class<?>> getTypeAliases() {
+            return delegate.getTypeAliases();
+        }
+    }
+}
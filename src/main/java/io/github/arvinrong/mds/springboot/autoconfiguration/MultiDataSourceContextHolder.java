@@ -0,0 +1,74 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+/**
+ * Thread bound stack of datasource names consulted by the routing datasources.
+ */
+public final class MultiDataSourceContextHolder {
+    private static final ThreadLocal<Context> CONTEXT = new ThreadLocal<Context>() {
+        @Override
+        protected Context initialValue() {
+            return new Context();
+        }
+    };
+
+    private MultiDataSourceContextHolder() {
+    }
+
+    public static void push(String dataSourceName) {
+        CONTEXT.get().push(dataSourceName);
+    }
+
+    public static void pop() {
+        CONTEXT.get().pop();
+    }
+
+    /**
+     * @return the innermost datasource name or {@code null} if none has been pushed
+     */
+    public static String peek() {
+        return CONTEXT.get().peek();
+    }
+
+    public static void clear() {
+        CONTEXT.remove();
+    }
+
+    private static class Context {
+        private String[] names = new String[8];
+        private int depth = 0;
+
+        void push(String name) {
+            if (depth == names.length) {
+                String[] grown = new String[names.length * 2];
+                System.arraycopy(names, 0, grown, 0, names.length);
+                names = grown;
+            }
+            names[depth++] = name;
+        }
+
+        void pop() {
+            if (depth > 0) {
+                names[--depth] = null;
+            }
+        }
+
+        String peek() {
+            return depth > 0 ? names[depth - 1] : null;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Health of the custom datasources, kept up to date by a background probe.
+ */
+public class MultiDataSourceHealth implements SmartInitializingSingleton, DisposableBean {
+    private static final Log logger = LogFactory.getLog(MultiDataSourceHealth.class);
+
+    private final MultiDataSourceHolder multiDataSourceHolder;
+    private final long probeInterval;
+    private final long probeTimeout;
+    private final Map<String, Probe> probes = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+    private ExecutorService probeExecutor;
+
+    public MultiDataSourceHealth(MultiDataSourceHolder multiDataSourceHolder) {
+        this.multiDataSourceHolder = multiDataSourceHolder;
+        MultiDataSourceProperties.Health health = multiDataSourceHolder.getProperties().getHealth();
+        this.probeInterval = Math.max(1, health.getProbeInterval());
+        this.probeTimeout = Math.max(1, health.getProbeTimeout());
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "multi-ds-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        probeExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "multi-ds-health-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::probeAll, 0, probeInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            probeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return health of the datasource, {@code null} if it isn't a custom datasource
+     */
+    public DataSourceHealth getHealth(String dataSourceName) {
+        Probe probe = probes.get(dataSourceName);
+        if (probe != null) {
+            return probe.health;
+        }
+        return multiDataSourceHolder.getCustomDataSources().containsKey(dataSourceName) ? DataSourceHealth.unknown(dataSourceName) : null;
+    }
+
+    /**
+     * @return health of every custom datasource in registration order
+     */
+    public Map<String, DataSourceHealth> getHealth() {
+        Map<String, DataSourceHealth> health = new LinkedHashMap<>();
+        for (String name : multiDataSourceHolder.getCustomDataSources().keySet()) {
+            health.put(name, getHealth(name));
+        }
+        return health;
+    }
+
+    /**
+     * @return false if any custom datasource is DOWN
+     */
+    public boolean isHealthy() {
+        for (DataSourceHealth health : getHealth().values()) {
+            if (health.getStatus() == DataSourceHealth.Status.DOWN) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void probeAll() {
+        try {
+            probes.keySet().retainAll(multiDataSourceHolder.getCustomDataSources().keySet());
+            for (MultiDataSourceHolder.DataSourceEntry entry : multiDataSourceHolder.getEntries()) {
+                DataSource dataSource = entry.getDataSource();
+                if (entry.getCustomDataSource() == null || dataSource == null) {
+                    continue;
+                }
+                if (dataSource instanceof LazyInitializingDataSource) {
+                    dataSource = ((LazyInitializingDataSource) dataSource).getTargetIfInitialized();
+                    if (dataSource == null) {
+                        continue;
+                    }
+                }
+                probes.computeIfAbsent(entry.getName(), Probe::new).start(dataSource, entry.getCircuitBreaker());
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to probe DataSources", e);
+        }
+    }
+
+    private final class Probe implements Runnable {
+        private final String name;
+        private final AtomicBoolean running = new AtomicBoolean();
+        private volatile DataSourceHealth health;
+        private volatile DataSource dataSource;
+        private volatile DataSourceCircuitBreaker circuitBreaker;
+        private volatile long startedAt;
+
+        Probe(String name) {
+            this.name = name;
+            this.health = DataSourceHealth.unknown(name);
+        }
+
+        void start(DataSource dataSource, DataSourceCircuitBreaker circuitBreaker) {
+            if (!running.compareAndSet(false, true)) {
+                long elapsed = System.currentTimeMillis() - startedAt;
+                if (elapsed > probeTimeout && health.getStatus() != DataSourceHealth.Status.DOWN) {
+                    down(startedAt, "Probe didn't finish within " + probeTimeout + " ms");
+                }
+                return;
+            }
+            this.dataSource = dataSource;
+            this.circuitBreaker = circuitBreaker;
+            this.startedAt = System.currentTimeMillis();
+            probeExecutor.execute(this);
+        }
+
+        @Override
+        public void run() {
+            long start = startedAt;
+            try (Connection connection = dataSource.getConnection()) {
+                if (!connection.isValid((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(probeTimeout)))) {
+                    throw new SQLException("Connection is not valid");
+                }
+                long now = System.currentTimeMillis();
+                if (health.getStatus() == DataSourceHealth.Status.DOWN) {
+                    logger.info("DataSource " + name + " is UP again.");
+                }
+                health = new DataSourceHealth(name, DataSourceHealth.Status.UP, now, now - start, null);
+                if (circuitBreaker != null) {
+                    circuitBreaker.recordSuccess();
+                }
+            } catch (Exception e) {
+                down(start, e.toString());
+            } finally {
+                running.set(false);
+            }
+        }
+
+        private void down(long start, String error) {
+            long now = System.currentTimeMillis();
+            if (health.getStatus() != DataSourceHealth.Status.DOWN) {
+                logger.warn("DataSource " + name + " is DOWN: " + error);
+            }
+            health = new DataSourceHealth(name, DataSourceHealth.Status.DOWN, now, now - start, error);
+            if (circuitBreaker != null) {
+                circuitBreaker.recordFailure();
+            }
+        }
+    }
+}
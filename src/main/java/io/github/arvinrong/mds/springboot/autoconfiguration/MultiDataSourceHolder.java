@@ -19,61 +19,162 @@ import org.apache.ibatis.session.SqlSessionFactory;
 import org.mybatis.spring.SqlSessionTemplate;
 import org.springframework.transaction.PlatformTransactionManager;
 import javax.sql.DataSource;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
+/**
+ * Registry of everything created per datasource name, replaced as a whole on every change.
+ */
 public class MultiDataSourceHolder {
+    private static final String TRANSACTION_MANAGER_SUFFIX = MultiDataSourceTransactionManagerAutoConfiguration.TRANSACTION_MGR_MAPPER_KEY_SUFFIX;
+    private static final String SQL_SESSION_FACTORY_SUFFIX = "SqlSessionFactory";
+    private static final String SQL_SESSION_TEMPLATE_SUFFIX = "SqlSessionTemplate";
+
     private MultiDataSourceProperties properties;
-    private Map<String, DataSource> multiDataSources = Collections.synchronizedMap(new HashMap<>());
-    private Map<String, PlatformTransactionManager> multiPlatformTransactionManagers = Collections.synchronizedMap(new HashMap<>());
-    private Map<String, SqlSessionFactory> sqlSessionFactories = Collections.synchronizedMap(new HashMap<>());
-    private Map<String, SqlSessionTemplate> sqlSessionTemplates = Collections.synchronizedMap(new HashMap<>());
-    private Map<String, String> multiDataSourcePoolPropertyPrefixes = Collections.synchronizedMap(new HashMap<>());
+    private volatile Map<String, DataSourceEntry> entries = Collections.emptyMap();
+    private final Map<String, DataSource> multiDataSources = new View<>("", DataSourceEntry::getDataSource, this::addDataSource);
+    private final Map<String, PlatformTransactionManager> multiPlatformTransactionManagers = new View<>(TRANSACTION_MANAGER_SUFFIX,
+            DataSourceEntry::getTransactionManager, this::addPlatformTransactionManager);
+    private final Map<String, SqlSessionFactory> sqlSessionFactories = new View<>(SQL_SESSION_FACTORY_SUFFIX,
+            DataSourceEntry::getSqlSessionFactory, this::addSqlSessionFactory);
+    private final Map<String, SqlSessionTemplate> sqlSessionTemplates = new View<>(SQL_SESSION_TEMPLATE_SUFFIX,
+            DataSourceEntry::getSqlSessionTemplate, this::addSqlSessionTemplate);
+    private final Map<String, String> multiDataSourcePoolPropertyPrefixes = new View<>("", DataSourceEntry::getPoolPropertyPrefix, this::addPoolPropertyPrefix);
+    private final Map<String, MultiDataSourceProperties.CustomDataSource> customDataSources = new View<>("",
+            DataSourceEntry::getCustomDataSource, this::addCustomDataSource);
+
+    public MultiDataSourceHolder(MultiDataSourceProperties properties) {
+        this.properties = properties;
+    }
 
     public void addSqlSessionFactory(String sqlSessionFactoryName, SqlSessionFactory sqlSessionFactory) {
-        if (sqlSessionFactoryName != null && sqlSessionFactory != null && !sqlSessionFactories.containsKey(sqlSessionFactoryName)) {
-            sqlSessionFactories.put(sqlSessionFactoryName, sqlSessionFactory);
+        if (sqlSessionFactoryName != null && sqlSessionFactory != null) {
+            update(stripSuffix(sqlSessionFactoryName, SQL_SESSION_FACTORY_SUFFIX),
+                    entry -> entry.sqlSessionFactory == null ? entry.with(e -> e.sqlSessionFactory = sqlSessionFactory) : entry);
         }
     }
 
     public void addSqlSessionTemplate(String sqlSessionTemplateName, SqlSessionTemplate sqlSessionTemplate) {
-        if (sqlSessionTemplateName != null && sqlSessionTemplate != null && !sqlSessionTemplates.containsKey(sqlSessionTemplateName)) {
-            sqlSessionTemplates.put(sqlSessionTemplateName, sqlSessionTemplate);
+        if (sqlSessionTemplateName != null && sqlSessionTemplate != null) {
+            update(stripSuffix(sqlSessionTemplateName, SQL_SESSION_TEMPLATE_SUFFIX),
+                    entry -> entry.sqlSessionTemplate == null ? entry.with(e -> e.sqlSessionTemplate = sqlSessionTemplate) : entry);
         }
     }
 
     public void addDataSource(String dataSourceName, DataSource dataSource) {
-        if (dataSourceName != null && dataSource != null && !multiDataSources.containsKey(dataSourceName)) {
-            multiDataSources.put(dataSourceName, dataSource);
+        if (dataSourceName != null && dataSource != null) {
+            update(dataSourceName, entry -> entry.dataSource == null ? entry.with(e -> e.dataSource = dataSource) : entry);
         }
     }
 
     public void addPlatformTransactionManager(String platformTransactionManagerName, PlatformTransactionManager platformTransactionManager) {
-        if (platformTransactionManagerName != null && platformTransactionManager != null
-                && !multiPlatformTransactionManagers.containsKey(platformTransactionManagerName)) {
-            multiPlatformTransactionManagers.put(platformTransactionManagerName, platformTransactionManager);
+        if (platformTransactionManagerName != null && platformTransactionManager != null) {
+            update(stripSuffix(platformTransactionManagerName, TRANSACTION_MANAGER_SUFFIX),
+                    entry -> entry.transactionManager == null ? entry.with(e -> e.transactionManager = platformTransactionManager) : entry);
         }
     }
 
-    public MultiDataSourceHolder(MultiDataSourceProperties properties) {
-        this.properties = properties;
+    public void addPoolPropertyPrefix(String dataSourceName, String poolPropertyPrefix) {
+        if (dataSourceName != null && poolPropertyPrefix != null) {
+            update(dataSourceName, entry -> entry.poolPropertyPrefix == null ? entry.with(e -> e.poolPropertyPrefix = poolPropertyPrefix) : entry);
+        }
+    }
+
+    public void addCustomDataSource(String dataSourceName, MultiDataSourceProperties.CustomDataSource customDataSource) {
+        if (dataSourceName != null && customDataSource != null) {
+            MultiDataSourceProperties.CircuitBreaker circuitBreaker = properties != null ? properties.getCircuitBreaker() : new MultiDataSourceProperties.CircuitBreaker();
+            update(dataSourceName, entry -> entry.customDataSource == null ? entry.with(e -> {
+                e.customDataSource = customDataSource;
+                if (circuitBreaker.isEnabled()) {
+                    e.circuitBreaker = new DataSourceCircuitBreaker(dataSourceName, circuitBreaker.getFailureThreshold(), circuitBreaker.getOpenDuration());
+                }
+            }) : entry);
+        }
+    }
+
+    /**
+     * Forgets the datasource and the transaction manager and Mybatis objects derived from it.
+     */
+    public synchronized void removeDataSource(String dataSourceName) {
+        if (entries.containsKey(dataSourceName)) {
+            Map<String, DataSourceEntry> copy = new LinkedHashMap<>(entries);
+            copy.remove(dataSourceName);
+            entries = Collections.unmodifiableMap(copy);
+        }
+    }
+
+    /**
+     * @return the entry of the datasource or {@code null} if nothing is registered under that name
+     */
+    public DataSourceEntry getEntry(String dataSourceName) {
+        return entries.get(dataSourceName);
     }
 
+    public DataSource getDataSource(String dataSourceName) {
+        DataSourceEntry entry = entries.get(dataSourceName);
+        return entry != null ? entry.dataSource : null;
+    }
+
+    /**
+     * @return the circuit breaker of a custom datasource, {@code null} if circuit breakers are disabled
+     */
+    public DataSourceCircuitBreaker getCircuitBreaker(String dataSourceName) {
+        DataSourceEntry entry = dataSourceName != null ? entries.get(dataSourceName) : null;
+        return entry != null ? entry.circuitBreaker : null;
+    }
+
+    /**
+     * @return a snapshot of all entries in registration order
+     */
+    public Collection<DataSourceEntry> getEntries() {
+        return entries.values();
+    }
+
+    private synchronized void update(String dataSourceName, UnaryOperator<DataSourceEntry> change) {
+        DataSourceEntry entry = entries.get(dataSourceName);
+        DataSourceEntry changed = change.apply(entry != null ? entry : new DataSourceEntry(dataSourceName));
+        if (changed != entry) {
+            Map<String, DataSourceEntry> copy = new LinkedHashMap<>(entries);
+            copy.put(dataSourceName, changed);
+            entries = Collections.unmodifiableMap(copy);
+        }
+    }
+
+    private static String stripSuffix(String beanName, String suffix) {
+        return beanName.endsWith(suffix) ? beanName.substring(0, beanName.length() - suffix.length()) : beanName;
+    }
+
+    /**
+     * View of the datasources by name, {@code put} adds like {@link #addDataSource(String, DataSource)}.
+     */
     public Map<String, DataSource> getMultiDataSources() {
         return multiDataSources;
     }
 
+    /**
+     * @deprecated use {@link #addDataSource(String, DataSource)}, entries already registered are kept
+     */
+    @Deprecated
     public void setMultiDataSources(Map<String, DataSource> multiDataSources) {
-        this.multiDataSources = Collections.synchronizedMap(multiDataSources);
+        multiDataSources.forEach(this::addDataSource);
     }
 
+    /**
+     * View of the transaction managers by bean name.
+     */
     public Map<String, PlatformTransactionManager> getMultiPlatformTransactionManager() {
         return multiPlatformTransactionManagers;
     }
 
+    /**
+     * @deprecated use {@link #addPlatformTransactionManager(String, PlatformTransactionManager)}, entries already registered are kept
+     */
+    @Deprecated
     public void setMultiPlatformTransactionManager(Map<String, PlatformTransactionManager> multiPlatformTransactionManagers) {
-        this.multiPlatformTransactionManagers = multiPlatformTransactionManagers;
+        multiPlatformTransactionManagers.forEach(this::addPlatformTransactionManager);
     }
 
     public MultiDataSourceProperties getProperties() {
@@ -84,28 +185,167 @@ public class MultiDataSourceHolder {
         this.properties = properties;
     }
 
-
+    /**
+     * View of the SqlSessionFactories by bean name.
+     */
     public Map<String, SqlSessionFactory> getSqlSessionFactories() {
         return sqlSessionFactories;
     }
 
+    /**
+     * @deprecated use {@link #addSqlSessionFactory(String, SqlSessionFactory)}, entries already registered are kept
+     */
+    @Deprecated
     public void setSqlSessionFactories(Map<String, SqlSessionFactory> sqlSessionFactories) {
-        this.sqlSessionFactories = sqlSessionFactories;
+        sqlSessionFactories.forEach(this::addSqlSessionFactory);
     }
 
+    /**
+     * View of the SqlSessionTemplates by bean name.
+     */
     public Map<String, SqlSessionTemplate> getSqlSessionTemplates() {
         return sqlSessionTemplates;
     }
 
+    /**
+     * @deprecated use {@link #addSqlSessionTemplate(String, SqlSessionTemplate)}, entries already registered are kept
+     */
+    @Deprecated
     public void setSqlSessionTemplates(Map<String, SqlSessionTemplate> sqlSessionTemplates) {
-        this.sqlSessionTemplates = sqlSessionTemplates;
+        sqlSessionTemplates.forEach(this::addSqlSessionTemplate);
     }
 
+    /**
+     * View of the pool property prefixes by datasource name.
+     */
     public Map<String, String> getMultiDataSourcePoolPropertyPrefixes() {
         return multiDataSourcePoolPropertyPrefixes;
     }
 
+    /**
+     * @deprecated use {@link #addPoolPropertyPrefix(String, String)}, entries already registered are kept
+     */
+    @Deprecated
     public void setMultiDataSourcePoolPropertyPrefixes(Map<String, String> multiDataSourcePoolPropertyPrefixes) {
-        this.multiDataSourcePoolPropertyPrefixes = multiDataSourcePoolPropertyPrefixes;
+        multiDataSourcePoolPropertyPrefixes.forEach(this::addPoolPropertyPrefix);
+    }
+
+    /**
+     * View of the settings of the custom datasources by name.
+     */
+    public Map<String, MultiDataSourceProperties.CustomDataSource> getCustomDataSources() {
+        return customDataSources;
+    }
+
+    /**
+     * Everything registered under one datasource name.
+     */
+    public static final class DataSourceEntry {
+        private final String name;
+        private DataSource dataSource;
+        private String poolPropertyPrefix;
+        private MultiDataSourceProperties.CustomDataSource customDataSource;
+        private PlatformTransactionManager transactionManager;
+        private SqlSessionFactory sqlSessionFactory;
+        private SqlSessionTemplate sqlSessionTemplate;
+        private DataSourceCircuitBreaker circuitBreaker;
+
+        private DataSourceEntry(String name) {
+            this.name = name;
+        }
+
+        private DataSourceEntry with(Consumer<DataSourceEntry> change) {
+            DataSourceEntry copy = new DataSourceEntry(name);
+            copy.dataSource = dataSource;
+            copy.poolPropertyPrefix = poolPropertyPrefix;
+            copy.customDataSource = customDataSource;
+            copy.transactionManager = transactionManager;
+            copy.sqlSessionFactory = sqlSessionFactory;
+            copy.sqlSessionTemplate = sqlSessionTemplate;
+            copy.circuitBreaker = circuitBreaker;
+            change.accept(copy);
+            return copy;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public DataSource getDataSource() {
+            return dataSource;
+        }
+
+        public String getPoolPropertyPrefix() {
+            return poolPropertyPrefix;
+        }
+
+        public MultiDataSourceProperties.CustomDataSource getCustomDataSource() {
+            return customDataSource;
+        }
+
+        public PlatformTransactionManager getTransactionManager() {
+            return transactionManager;
+        }
+
+        public SqlSessionFactory getSqlSessionFactory() {
+            return sqlSessionFactory;
+        }
+
+        public SqlSessionTemplate getSqlSessionTemplate() {
+            return sqlSessionTemplate;
+        }
+
+        public DataSourceCircuitBreaker getCircuitBreaker() {
+            return circuitBreaker;
+        }
+    }
+
+    /**
+     * Map over one component of the entries, keyed by datasource name plus a bean name suffix.
+     */
+    private class View<V> extends AbstractMap<String, V> {
+        private final String suffix;
+        private final Function<DataSourceEntry, V> component;
+        private final BiConsumer<String, V> adder;
+
+        View(String suffix, Function<DataSourceEntry, V> component, BiConsumer<String, V> adder) {
+            this.suffix = suffix;
+            this.component = component;
+            this.adder = adder;
+        }
+
+        @Override
+        public V put(String key, V value) {
+            V previous = get(key);
+            adder.accept(key, value);
+            return previous;
+        }
+
+        @Override
+        public V get(Object key) {
+            if (!(key instanceof String) || !((String) key).endsWith(suffix)) {
+                return null;
+            }
+            String name = (String) key;
+            DataSourceEntry entry = entries.get(suffix.isEmpty() ? name : name.substring(0, name.length() - suffix.length()));
+            return entry != null ? component.apply(entry) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Map.Entry<String, V>> entrySet() {
+            Map<String, V> snapshot = new LinkedHashMap<>();
+            for (DataSourceEntry entry : entries.values()) {
+                V value = component.apply(entry);
+                if (value != null) {
+                    snapshot.put(entry.name + suffix, value);
+                }
+            }
+            return Collections.unmodifiableMap(snapshot).entrySet();
+        }
     }
-}
\ No newline at end of file
+}
@@ -22,12 +22,21 @@ import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.support.AbstractBeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.DefaultSingletonBeanRegistry;
 import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
 
 import javax.annotation.PostConstruct;
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
 import java.util.*;
+import java.util.function.Supplier;
 
 public class MultiDataSourceInitializer {
     private static final Log logger = LogFactory.getLog(MultiDataSourceInitializer.class);
@@ -38,6 +47,7 @@ public class MultiDataSourceInitializer {
     private Map<String, DataSource> dataSources = new HashMap<>();
     private Boolean isInitialized = false;
     private MultiDataSourceHolder multiDataSourceHolder;
+    private MultiDataSourceStartupTimeline startupTimeline;
 
     public MultiDataSourceHolder getMultiDataSourceHolder() {
         return multiDataSourceHolder;
@@ -59,6 +69,7 @@ public class MultiDataSourceInitializer {
         this.multiDataSourceHolder = multiDataSourceHolder;
         this.beanFactory = beanFactory;
         this.properties = multiDataSourceHolder.getProperties();
+        this.startupTimeline = MultiDataSourceStartupTimeline.of(beanFactory);
     }
 
     @PostConstruct
@@ -66,39 +77,328 @@ public class MultiDataSourceInitializer {
         if (isInitialized) {
             return;
         }
+        MultiDataSourceStartupTimeline.Step step = startupTimeline.start(null, "initialize datasources");
+        try {
+            initDataSources();
+        } finally {
+            step.close();
+        }
+    }
+
+    private void initDataSources() {
+        if (properties.isParallelInitialization()) {
+            initConcurrently();
+            initReadWriteGroups();
+            initShardingGroups();
+            initDynamicRouting();
+            initScripts();
+            isInitialized = true;
+            return;
+        }
         List<MultiDataSourceProperties.CustomDataSource> customDataSources = properties.getDataSources();
         Iterator<MultiDataSourceProperties.CustomDataSource> iterator = customDataSources.iterator();
         int idx = 0;
         while (iterator.hasNext()) {
             MultiDataSourceProperties.CustomDataSource customDataSourceProperties = iterator.next();
-            if (dataSources.containsKey(customDataSourceProperties.getName())) {
-                logger.error("=========== Failed to start, duplicate DataSource name found:" + customDataSourceProperties.getName());
-                throw new IllegalStateException("=========== Failed to start, duplicate DataSource name found: " + customDataSourceProperties.getName());
+            checkDuplicateName(customDataSourceProperties.getName(), dataSources.keySet());
+            DataSource dataSource = buildDataSource(customDataSourceProperties);
+            createDataSourceBean(customDataSourceProperties, dataSource, idx);
+            idx++;
+        }
+        initReadWriteGroups();
+        initShardingGroups();
+        initDynamicRouting();
+        initScripts();
+        isInitialized = true;
+    }
+
+    /**
+     * Runs the scripts of the datasources declaring "initialize", lazy ones when their pool is created.
+     */
+    private void initScripts() {
+        List<String> names = new ArrayList<>();
+        for (MultiDataSourceProperties.CustomDataSource customDataSourceProperties : properties.getDataSources()) {
+            if (!customDataSourceProperties.isInitialize()) {
+                continue;
             }
-            DataSource dataSource = getDataSource(customDataSourceProperties.getType(), customDataSourceProperties);
+            DataSource dataSource = dataSources.get(customDataSourceProperties.getName());
+            if (dataSource instanceof LazyInitializingDataSource) {
+                ((LazyInitializingDataSource) dataSource).addTargetCustomizer(target -> runScripts(customDataSourceProperties, target));
+            } else {
+                names.add(customDataSourceProperties.getName());
+            }
+        }
+        MultiDataSourceTasks.runAll("run SQL scripts", names, properties.getInitializationThreads(), name -> {
+            runScripts(multiDataSourceHolder.getCustomDataSources().get(name), dataSources.get(name));
+            return name;
+        });
+    }
+
+    /**
+     * Runs the schema scripts, then the data scripts of a custom datasource like Spring Boot does for the default one.
+     */
+    void runScripts(MultiDataSourceProperties.CustomDataSource customDataSourceProperties, DataSource dataSource) {
+        if (!customDataSourceProperties.isInitialize()) {
+            return;
+        }
+        String name = customDataSourceProperties.getName();
+        SqlScriptRunner runner = new SqlScriptRunner(name, customDataSourceProperties.getSeparator(),
+                customDataSourceProperties.isContinueOnError(), customDataSourceProperties.getSqlScriptEncoding());
+        MultiDataSourceStartupTimeline.Step step = startupTimeline.start(name, "run scripts");
+        try {
+            runScripts(runner, getScripts(customDataSourceProperties, "schema", customDataSourceProperties.getSchema()),
+                    getScriptDataSource(customDataSourceProperties, dataSource, customDataSourceProperties.getSchemaUsername(),
+                            customDataSourceProperties.getSchemaPassword()));
+            runScripts(runner, getScripts(customDataSourceProperties, "data", customDataSourceProperties.getData()),
+                    getScriptDataSource(customDataSourceProperties, dataSource, customDataSourceProperties.getDataUsername(),
+                            customDataSourceProperties.getDataPassword()));
+        } finally {
+            step.close();
+        }
+    }
+
+    private void runScripts(SqlScriptRunner runner, List<Resource> scripts, DataSource dataSource) {
+        if (scripts.isEmpty()) {
+            return;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            for (Resource script : scripts) {
+                runner.run(connection, script);
+            }
+        } catch (IllegalStateException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("============ Failed to run SQL scripts", e);
+        }
+    }
+
+    private List<Resource> getScripts(MultiDataSourceProperties.CustomDataSource customDataSourceProperties, String kind, List<String> locations) {
+        boolean fallback = locations == null;
+        if (fallback) {
+            String prefix = "classpath*:" + kind + "-" + customDataSourceProperties.getName();
+            locations = Arrays.asList(prefix + "-" + customDataSourceProperties.getPlatform() + ".sql", prefix + ".sql");
+        }
+        ResourcePatternResolver resolver = new PathMatchingResourcePatternResolver(customDataSourceProperties.getClassLoader());
+        List<Resource> scripts = new ArrayList<>();
+        for (String location : locations) {
+            try {
+                for (Resource resource : resolver.getResources(location)) {
+                    if (resource.exists()) {
+                        scripts.add(resource);
+                    } else if (!fallback && !customDataSourceProperties.isContinueOnError()) {
+                        throw new IllegalStateException("============ No " + kind + " script found at " + location
+                                + " for DataSource: " + customDataSourceProperties.getName());
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("============ Failed to load " + kind + " script " + location
+                        + " for DataSource: " + customDataSourceProperties.getName(), e);
+            }
+        }
+        return scripts;
+    }
+
+    private DataSource getScriptDataSource(MultiDataSourceProperties.CustomDataSource customDataSourceProperties, DataSource dataSource,
+                                           String username, String password) {
+        if (!StringUtils.hasText(username) || !StringUtils.hasText(password)) {
+            return dataSource;
+        }
+        DriverManagerDataSource scriptDataSource = new DriverManagerDataSource(customDataSourceProperties.determineUrl(), username, password);
+        scriptDataSource.setDriverClassName(customDataSourceProperties.determineDriverClassName());
+        return scriptDataSource;
+    }
+
+    /**
+     * Builds the pools concurrently and registers the beans in declaration order.
+     */
+    private void initConcurrently() {
+        Map<String, MultiDataSourceProperties.CustomDataSource> customDataSources = new LinkedHashMap<>();
+        Map<String, MultiDataSourceBuilder> builders = new HashMap<>();
+        List<String> eagerNames = new ArrayList<>();
+        for (MultiDataSourceProperties.CustomDataSource customDataSourceProperties : properties.getDataSources()) {
+            String name = customDataSourceProperties.getName();
+            checkDuplicateName(name, customDataSources.keySet());
+            customDataSources.put(name, customDataSourceProperties);
+            if (!customDataSourceProperties.isLazy()) {
+                eagerNames.add(name);
+                builders.put(name, getDataSourceBuilder(customDataSourceProperties.getType(), customDataSourceProperties));
+            }
+        }
+        List<String> names = new ArrayList<>(customDataSources.keySet());
+        int threads = properties.getInitializationThreads();
+        Map<String, DataSource> built = MultiDataSourceTasks.runAll("create DataSource", eagerNames, threads,
+                name -> {
+                    MultiDataSourceStartupTimeline.Step step = startupTimeline.start(name, "create pool");
+                    try {
+                        return builders.get(name).buildDataSource(customDataSources.get(name));
+                    } finally {
+                        step.close();
+                    }
+                }, (name, dataSource) -> MultiDataSourceManager.close(dataSource));
+        for (String name : names) {
+            if (customDataSources.get(name).isLazy()) {
+                built.put(name, getLazyDataSource(customDataSources.get(name)));
+            }
+        }
+        int idx = 0;
+        for (String name : names) {
+            DataSource dataSource = built.get(name);
             if (dataSource == null) {
-                throw new IllegalStateException("============ Failed to create DataSource: " + customDataSourceProperties.getName());
+                throw new IllegalStateException("============ Failed to create DataSource: " + name);
             }
-            createDataSourceBean(customDataSourceProperties, dataSource, idx);
+            createDataSourceBean(customDataSources.get(name), dataSource, idx);
             idx++;
         }
-        isInitialized = true;
+        MultiDataSourceTasks.runAll("warm up DataSource", eagerNames, threads, name -> {
+            MultiDataSourceStartupTimeline.Step step = startupTimeline.start(name, "open first connection");
+            try (Connection connection = dataSources.get(name).getConnection()) {
+                return connection.isValid(0);
+            } finally {
+                step.close();
+            }
+        });
+    }
+
+    /**
+     * @return whether the metrics or a read/write group read the connection counts of the pool
+     */
+    boolean needsPoolStatistics(String dataSourceName) {
+        if (properties.getMetrics().isEnabled()) {
+            return true;
+        }
+        for (MultiDataSourceProperties.ReadWriteGroup readWriteGroup : properties.getReadWriteGroups()) {
+            if (dataSourceName.equals(readWriteGroup.getPrimary()) || readWriteGroup.getReplicas().contains(dataSourceName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void initReadWriteGroups() {
+        for (MultiDataSourceProperties.ReadWriteGroup readWriteGroup : properties.getReadWriteGroups()) {
+            String name = readWriteGroup.getName();
+            checkDuplicateName(name, dataSources.keySet());
+            DataSource primary = getGroupMember(name, readWriteGroup.getPrimary());
+            List<DataSource> replicas = new ArrayList<>();
+            for (String replica : readWriteGroup.getReplicas()) {
+                replicas.add(getGroupMember(name, replica));
+            }
+            int[] weights = new int[replicas.size()];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = i < readWriteGroup.getWeights().size() ? readWriteGroup.getWeights().get(i) : 1;
+            }
+            ReplicaLoadBalancer loadBalancer = ReplicaLoadBalancers.create(readWriteGroup.getLoadBalancer(), ClassUtils.getDefaultClassLoader());
+            if (!replicas.isEmpty()) {
+                loadBalancer.init(name, replicas, weights);
+            }
+            DataSourceCircuitBreaker[] replicaCircuitBreakers = null;
+            if (properties.getCircuitBreaker().isEnabled()) {
+                replicaCircuitBreakers = new DataSourceCircuitBreaker[replicas.size()];
+                for (int i = 0; i < replicaCircuitBreakers.length; i++) {
+                    replicaCircuitBreakers[i] = multiDataSourceHolder.getCircuitBreaker(readWriteGroup.getReplicas().get(i));
+                }
+            }
+            registerDataSourceBean(name, new ReadWriteSplittingDataSource(name, primary, replicas, loadBalancer,
+                    multiDataSourceHolder.getCircuitBreaker(readWriteGroup.getPrimary()), replicaCircuitBreakers), null);
+        }
+    }
+
+    private void initShardingGroups() {
+        for (MultiDataSourceProperties.ShardingGroup shardingGroup : properties.getShardingGroups()) {
+            String name = shardingGroup.getName();
+            checkDuplicateName(name, dataSources.keySet());
+            if (shardingGroup.getShards().isEmpty()) {
+                throw new IllegalStateException("============ Failed to create " + name + ", no shards configured.");
+            }
+            List<DataSource> shards = new ArrayList<>();
+            DataSourceCircuitBreaker[] circuitBreakers = properties.getCircuitBreaker().isEnabled()
+                    ? new DataSourceCircuitBreaker[shardingGroup.getShards().size()] : null;
+            for (int i = 0; i < shardingGroup.getShards().size(); i++) {
+                String shard = shardingGroup.getShards().get(i);
+                shards.add(getGroupMember(name, shard));
+                if (circuitBreakers != null) {
+                    circuitBreakers[i] = multiDataSourceHolder.getCircuitBreaker(shard);
+                }
+            }
+            ShardingStrategy strategy = ShardingStrategies.create(shardingGroup.getStrategy(), ClassUtils.getDefaultClassLoader());
+            strategy.init(name, shardingGroup.getShards(), shardingGroup);
+            registerDataSourceBean(name, new ShardingDataSource(name, shardingGroup.getShards(), shards, strategy,
+                    circuitBreakers, shardingGroup.getScatterGatherThreads()), null);
+        }
+    }
+
+    private void initDynamicRouting() {
+        MultiDataSourceProperties.DynamicRouting dynamicRouting = properties.getDynamicRouting();
+        String name = dynamicRouting.getName();
+        if (!StringUtils.hasText(name)) {
+            return;
+        }
+        checkDuplicateName(name, dataSources.keySet());
+        String defaultTarget = dynamicRouting.getDefaultTarget();
+        Supplier<DataSource> defaultDataSource;
+        if (StringUtils.hasText(defaultTarget)) {
+            DataSource dataSource = getGroupMember(name, defaultTarget);
+            defaultDataSource = () -> dataSource;
+        } else {
+            // The default "dataSource" bean may still be in creation here, look it up on first use.
+            defaultDataSource = () -> beanFactory.containsBean("dataSource") ? beanFactory.getBean("dataSource", DataSource.class) : null;
+        }
+        registerDataSourceBean(name, new DynamicRoutingDataSource(name, multiDataSourceHolder, defaultDataSource,
+                StringUtils.hasText(defaultTarget) ? defaultTarget : null), null);
+    }
+
+    private DataSource getGroupMember(String groupName, String memberName) {
+        DataSource dataSource = memberName != null ? dataSources.get(memberName) : null;
+        if (dataSource == null) {
+            throw new IllegalStateException("============ Failed to create " + groupName + ", unknown DataSource: " + memberName);
+        }
+        return dataSource;
+    }
+
+    private void checkDuplicateName(String name, Set<String> existingNames) {
+        if (existingNames.contains(name)) {
+            logger.error("=========== Failed to start, duplicate DataSource name found:" + name);
+            throw new IllegalStateException("=========== Failed to start, duplicate DataSource name found: " + name);
+        }
+    }
+
+    /**
+     * Builds the pool of a custom datasource without registering it, lazy datasources defer the pool to first use.
+     */
+    DataSource buildDataSource(MultiDataSourceProperties.CustomDataSource customDataSourceProperties) {
+        DataSource dataSource = customDataSourceProperties.isLazy() ? getLazyDataSource(customDataSourceProperties)
+                : getDataSource(customDataSourceProperties.getType(), customDataSourceProperties);
+        if (dataSource == null) {
+            throw new IllegalStateException("============ Failed to create DataSource: " + customDataSourceProperties.getName());
+        }
+        return dataSource;
+    }
+
+    private DataSource getLazyDataSource(MultiDataSourceProperties.CustomDataSource customDataSourceProperties) {
+        return new LazyInitializingDataSource(customDataSourceProperties.getName(),
+                () -> getDataSource(customDataSourceProperties.getType(), customDataSourceProperties));
     }
 
     private DataSource getDataSource(Class<? extends DataSource> dataSourceType, MultiDataSourceProperties.CustomDataSource customDataSourceProperties) {
+        MultiDataSourceStartupTimeline.Step step = startupTimeline.start(customDataSourceProperties.getName(), "create pool");
+        try {
+            return getDataSourceBuilder(dataSourceType, customDataSourceProperties).buildDataSource(customDataSourceProperties);
+        } finally {
+            step.close();
+        }
+    }
+
+    private MultiDataSourceBuilder getDataSourceBuilder(Class<? extends DataSource> dataSourceType, MultiDataSourceProperties.CustomDataSource customDataSourceProperties) {
         MultiDataSourceBuilder multiDataSourceBuilder = null;
         String builderName = getBuilderName(dataSourceType, customDataSourceProperties.getClassLoader());
-        DataSource dataSource;
         if (builderName != null && beanFactory.containsBean(builderName)) {
             multiDataSourceBuilder = beanFactory.getBean(builderName, MultiDataSourceBuilder.class);
         }
         if (multiDataSourceBuilder == null) {
             logger.error("========== Failed to create custom datasource, dataSourceBuilder returns null：" + customDataSourceProperties.getName());
             throw new IllegalStateException("No supported DataSource type found for " + customDataSourceProperties.getName());
-        } else {
-            dataSource = multiDataSourceBuilder.buildDataSource(customDataSourceProperties);
         }
-        return dataSource;
+        return multiDataSourceBuilder;
     }
 
     private String getBuilderName(Class<? extends DataSource> dataSourceType, ClassLoader classLoader) {
@@ -131,7 +431,15 @@ public class MultiDataSourceInitializer {
     }
 
     private void createDataSourceBean(MultiDataSourceProperties.CustomDataSource customDataSourceProperties, DataSource dataSource, int index) {
-        String customDataSourceBeanName = customDataSourceProperties.getName();
+        multiDataSourceHolder.addCustomDataSource(customDataSourceProperties.getName(), customDataSourceProperties);
+        registerDataSourceBean(customDataSourceProperties.getName(), dataSource,
+                getPropertyPrefixPattern(customDataSourceProperties.getType().getName(), index));
+    }
+
+    /**
+     * @param poolPropertyPrefix prefix of the pool specific properties, {@code null} if there is nothing to bind
+     */
+    private void registerDataSourceBean(String customDataSourceBeanName, DataSource dataSource, String poolPropertyPrefix) {
         BeanDefinitionRegistry registry = (BeanDefinitionRegistry) beanFactory;
         if (!registry.containsBeanDefinition(customDataSourceBeanName)) {
             GenericBeanDefinition beanDefinition = new GenericBeanDefinition();
@@ -142,9 +450,11 @@ public class MultiDataSourceInitializer {
             beanDefinition.setBeanClass(dataSource.getClass());
             registry.registerBeanDefinition(customDataSourceBeanName, beanDefinition);
             dataSources.put(customDataSourceBeanName, dataSource);
-            multiDataSourceHolder.getMultiDataSources().put(customDataSourceBeanName, dataSource);
-            multiDataSourceHolder.getMultiDataSourcePoolPropertyPrefixes().put(customDataSourceBeanName, getPropertyPrefixPattern(customDataSourceProperties.getType().getName(), index));
+            multiDataSourceHolder.addDataSource(customDataSourceBeanName, dataSource);
+            multiDataSourceHolder.addPoolPropertyPrefix(customDataSourceBeanName, poolPropertyPrefix);
             beanFactory.getBean(customDataSourceBeanName);
+            // The bean factory would destroy the placeholder it instantiated, not the datasource swapped in for it.
+            ((DefaultSingletonBeanRegistry) beanFactory).registerDisposableBean(customDataSourceBeanName, MultiDataSourceManager.closer(dataSource));
         }
     }
 }
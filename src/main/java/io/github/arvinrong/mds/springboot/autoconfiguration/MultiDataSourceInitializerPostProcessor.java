@@ -18,33 +18,31 @@ package io.github.arvinrong.mds.springboot.autoconfiguration;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.MutablePropertyValues;
 import org.springframework.beans.factory.*;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.springframework.beans.factory.support.GenericBeanDefinition;
-import org.springframework.boot.bind.PropertiesConfigurationFactory;
+import org.springframework.boot.bind.RelaxedDataBinder;
 import org.springframework.context.annotation.ImportBeanDefinitionRegistrar;
-import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
 import org.springframework.core.convert.support.DefaultConversionService;
-import org.springframework.core.env.ConfigurableEnvironment;
-import org.springframework.core.env.MutablePropertySources;
-import org.springframework.core.env.PropertySource;
-import org.springframework.core.env.PropertySources;
+import org.springframework.core.env.Environment;
 import org.springframework.core.type.AnnotationMetadata;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
+import org.springframework.validation.BindException;
+import org.springframework.validation.BindingResult;
 
 import javax.sql.DataSource;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 
-public class MultiDataSourceInitializerPostProcessor implements BeanPostProcessor, InitializingBean {
+public class MultiDataSourceInitializerPostProcessor implements BeanPostProcessor {
 
     private static final Log logger = LogFactory
             .getLog(MultiDataSourceInitializerPostProcessor.class);
@@ -52,48 +50,17 @@ public class MultiDataSourceInitializerPostProcessor implements BeanPostProcesso
     private List<String> multiDataSourceBeanNameList = new ArrayList<>();
     private List<String> multiDataSourcePlatformTransactionManagerList = new ArrayList<>();
     private BeanFactory beanFactory;
-    private PropertySources propertySources;
+    private Environment environment;
 
-    MultiDataSourceInitializerPostProcessor(MultiDataSourceProperties properties, BeanFactory beanFactory) {
+    MultiDataSourceInitializerPostProcessor(MultiDataSourceProperties properties, BeanFactory beanFactory, Environment environment) {
         this.beanFactory = beanFactory;
-        List<MultiDataSourceProperties.CustomDataSource> multiDataSourcePropertiesMap = properties.getDataSources();
-        Iterator<MultiDataSourceProperties.CustomDataSource> iterator = multiDataSourcePropertiesMap.iterator();
-        while (iterator.hasNext()) {
-            MultiDataSourceProperties.CustomDataSource customDataSource = iterator.next();
-            multiDataSourceBeanNameList.add(customDataSource.getName());
-            multiDataSourcePlatformTransactionManagerList.add(customDataSource.getName() + MultiDataSourceTransactionManagerAutoConfiguration.TRANSACTION_MGR_MAPPER_KEY_SUFFIX);
+        this.environment = environment;
+        for (String dataSourceName : properties.determineDataSourceNames()) {
+            multiDataSourceBeanNameList.add(dataSourceName);
+            multiDataSourcePlatformTransactionManagerList.add(dataSourceName + MultiDataSourceTransactionManagerAutoConfiguration.TRANSACTION_MGR_MAPPER_KEY_SUFFIX);
         }
     }
 
-    @Override
-    public void afterPropertiesSet() {
-        if (this.propertySources == null) {
-            PropertySourcesPlaceholderConfigurer configurer = getSinglePropertySourcesPlaceholderConfigurer();
-            if (configurer != null) {
-                this.propertySources = new MultiDataSourceInitializerPostProcessor.FlatPropertySources(configurer.getAppliedPropertySources());
-            }
-        }
-    }
-
-    private PropertySourcesPlaceholderConfigurer getSinglePropertySourcesPlaceholderConfigurer() {
-        // Take care not to cause early instantiation of all FactoryBeans
-        if (this.beanFactory instanceof ListableBeanFactory) {
-            ListableBeanFactory listableBeanFactory = (ListableBeanFactory) this.beanFactory;
-            Map<String, PropertySourcesPlaceholderConfigurer> beans = listableBeanFactory
-                    .getBeansOfType(PropertySourcesPlaceholderConfigurer.class, false,
-                            false);
-            if (beans.size() == 1) {
-                return beans.values().iterator().next();
-            }
-            if (beans.size() > 1 && logger.isWarnEnabled()) {
-                logger.warn("Multiple PropertySourcesPlaceholderConfigurer "
-                        + "beans registered " + beans.keySet()
-                        + ", falling back to Environment");
-            }
-        }
-        return null;
-    }
-
     @Override
     public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
         return bean;
@@ -109,7 +76,12 @@ public class MultiDataSourceInitializerPostProcessor implements BeanPostProcesso
                 MultiDataSourceHolder multiDataSourceHolder = (MultiDataSourceHolder) beanFactory.getBean("multiDataSourceHolder");
                 DataSource dataSource = multiDataSourceHolder.getMultiDataSources().get(beanName);
                 String prefix = multiDataSourceHolder.getMultiDataSourcePoolPropertyPrefixes().get(beanName);
-                bindProperties(dataSource, beanName, prefix);
+                // Routing datasources have no pool of their own, hence no prefix to bind.
+                if (dataSource instanceof LazyInitializingDataSource) {
+                    ((LazyInitializingDataSource) dataSource).setTargetCustomizer(target -> bindProperties(target, beanName, prefix));
+                } else if (prefix != null) {
+                    bindProperties(dataSource, beanName, prefix);
+                }
                 if (dataSource == null) {
                     logger.error(beanName + "  datasource bean failed to be created.");
                     throw new IllegalStateException(beanName + " datasource bean failed to be created.");
@@ -136,25 +108,40 @@ public class MultiDataSourceInitializerPostProcessor implements BeanPostProcesso
 
 
     private void bindProperties(Object bean, String beanName, String prefix) {
-        Object target = bean;
-        PropertiesConfigurationFactory<Object> factory = new PropertiesConfigurationFactory<Object>(
-                target);
-        factory.setPropertySources(this.propertySources);
-        // If no explicit conversion service is provided we add one so that (at least)
-        // comma-separated arrays of convertibles can be bound automatically
-        factory.setConversionService(new DefaultConversionService());
-        factory.setIgnoreInvalidFields(false);
-        factory.setIgnoreUnknownFields(true);
-        factory.setIgnoreNestedProperties(false);
-        if (StringUtils.hasLength(prefix)) {
-            factory.setTargetName(prefix);
-        }
+        MultiDataSourceStartupTimeline.Step step = MultiDataSourceStartupTimeline.of(beanFactory).start(beanName, "bind pool properties");
         try {
-            factory.bindPropertiesToTarget();
-        } catch (Exception ex) {
-            String targetClass = ClassUtils.getShortName(target.getClass());
+            bindPropertiesToTarget(bean, beanName, prefix);
+            // After binding, so that the tracker chains to a metrics registry or tracker factory of the pool.
+            if (beanFactory.getBean(MultiDataSourceInitializer.class).needsPoolStatistics(beanName)) {
+                PoolStatistics.track((DataSource) bean);
+            }
+        } finally {
+            step.close();
+        }
+    }
+
+    /**
+     * Binds the pool section of the datasource taken from the property index.
+     */
+    private void bindPropertiesToTarget(Object bean, String beanName, String prefix) {
+        if (!StringUtils.hasLength(prefix)) {
+            return;
+        }
+        Map<String, Object> properties = MultiDataSourcePropertyIndex.of(environment).getSection(prefix);
+        if (properties.isEmpty()) {
+            return;
+        }
+        RelaxedDataBinder binder = new RelaxedDataBinder(bean);
+        binder.setConversionService(DefaultConversionService.getSharedInstance());
+        binder.setIgnoreInvalidFields(false);
+        binder.setIgnoreUnknownFields(true);
+        binder.setIgnoreNestedProperties(false);
+        binder.bind(new MutablePropertyValues(properties));
+        BindingResult result = binder.getBindingResult();
+        if (result.hasErrors()) {
+            String targetClass = ClassUtils.getShortName(bean.getClass());
             throw new BeanCreationException(beanName, "Could not bind properties to "
-                    + targetClass, ex);
+                    + targetClass, new BindException(result));
         }
     }
 
@@ -180,55 +167,4 @@ public class MultiDataSourceInitializerPostProcessor implements BeanPostProcesso
         }
 
     }
-
-    /**
-     * Convenience class to flatten out a tree of property sources without losing the
-     * reference to the backing data (which can therefore be updated in the background).
-     */
-    private static class FlatPropertySources implements org.springframework.core.env.PropertySources {
-
-        private org.springframework.core.env.PropertySources propertySources;
-
-        FlatPropertySources(org.springframework.core.env.PropertySources propertySources) {
-            this.propertySources = propertySources;
-        }
-
-        @Override
-        public Iterator<PropertySource<?>> iterator() {
-            MutablePropertySources result = getFlattened();
-            return result.iterator();
-        }
-
-        @Override
-        public boolean contains(String name) {
-            return get(name) != null;
-        }
-
-        @Override
-        public PropertySource<?> get(String name) {
-            return getFlattened().get(name);
-        }
-
-        private MutablePropertySources getFlattened() {
-            MutablePropertySources result = new MutablePropertySources();
-            for (PropertySource<?> propertySource : this.propertySources) {
-                flattenPropertySources(propertySource, result);
-            }
-            return result;
-        }
-
-        private void flattenPropertySources(PropertySource<?> propertySource,
-                                            MutablePropertySources result) {
-            Object source = propertySource.getSource();
-            if (source instanceof ConfigurableEnvironment) {
-                ConfigurableEnvironment environment = (ConfigurableEnvironment) source;
-                for (PropertySource<?> childSource : environment.getPropertySources()) {
-                    flattenPropertySources(childSource, result);
-                }
-            } else {
-                result.addLast(propertySource);
-            }
-        }
-
-    }
 }
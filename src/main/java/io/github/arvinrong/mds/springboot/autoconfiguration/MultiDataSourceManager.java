@@ -0,0 +1,294 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.DefaultSingletonBeanRegistry;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.boot.bind.RelaxedDataBinder;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.util.ReflectionUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds and retires custom datasources while the application is running.
+ */
+public class MultiDataSourceManager {
+    private static final Log logger = LogFactory.getLog(MultiDataSourceManager.class);
+    private static final long DRAIN_POLL_INTERVAL = 100;
+
+    private final MultiDataSourceInitializer multiDataSourceInitializer;
+    private final MultiDataSourceHolder multiDataSourceHolder;
+    private final ConfigurableListableBeanFactory beanFactory;
+
+    public MultiDataSourceManager(MultiDataSourceInitializer multiDataSourceInitializer, MultiDataSourceHolder multiDataSourceHolder,
+                                  ConfigurableListableBeanFactory beanFactory) {
+        this.multiDataSourceInitializer = multiDataSourceInitializer;
+        this.multiDataSourceHolder = multiDataSourceHolder;
+        this.beanFactory = beanFactory;
+    }
+
+    public Set<String> getDataSourceNames() {
+        return new LinkedHashSet<>(multiDataSourceHolder.getMultiDataSources().keySet());
+    }
+
+    public DataSource addDataSource(MultiDataSourceProperties.CustomDataSource customDataSource) {
+        return addDataSource(customDataSource, Collections.emptyMap());
+    }
+
+    /**
+     * Builds the pool and the objects derived from it and registers them, once its first connection has been opened.
+     *
+     * @param poolProperties pool specific settings such as "maximum-pool-size", bound like the
+     *                       "hikari" or "tomcat" section of a configured datasource
+     */
+    public synchronized DataSource addDataSource(MultiDataSourceProperties.CustomDataSource customDataSource, Map<String, ?> poolProperties) {
+        String name = customDataSource.getName();
+        if (name == null || multiDataSourceHolder.getMultiDataSources().containsKey(name) || beanFactory.containsBean(name)) {
+            throw new IllegalStateException("=========== Failed to add DataSource, missing or duplicate name: " + name);
+        }
+        DataSource dataSource = multiDataSourceInitializer.buildDataSource(customDataSource);
+        try {
+            if (dataSource instanceof LazyInitializingDataSource) {
+                ((LazyInitializingDataSource) dataSource).setTargetCustomizer(target -> {
+                    bindPoolProperties(target, poolProperties);
+                    trackPool(name, target);
+                    multiDataSourceInitializer.runScripts(customDataSource, target);
+                });
+            } else {
+                bindPoolProperties(dataSource, poolProperties);
+                trackPool(name, dataSource);
+                try (Connection connection = dataSource.getConnection()) {
+                    connection.isValid(0);
+                }
+                multiDataSourceInitializer.runScripts(customDataSource, dataSource);
+            }
+            DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+            String[] customizers = beanFactory.getBeanNamesForType(TransactionManagerCustomizers.class);
+            if (customizers.length == 1) {
+                beanFactory.getBean(customizers[0], TransactionManagerCustomizers.class).customize(transactionManager);
+            }
+            // Mybatis reads the mapper settings of the datasource from the holder.
+            multiDataSourceHolder.addCustomDataSource(name, customDataSource);
+            Object[] mybatisObjects = createMybatisObjects(name, dataSource);
+
+            multiDataSourceHolder.addDataSource(name, dataSource);
+            beanFactory.registerSingleton(name, dataSource);
+            // Singletons registered directly are not destroyed by the bean factory otherwise.
+            ((DefaultSingletonBeanRegistry) beanFactory).registerDisposableBean(name, closer(dataSource));
+            String transactionManagerName = name + MultiDataSourceTransactionManagerAutoConfiguration.TRANSACTION_MGR_MAPPER_KEY_SUFFIX;
+            multiDataSourceHolder.addPlatformTransactionManager(transactionManagerName, transactionManager);
+            beanFactory.registerSingleton(transactionManagerName, transactionManager);
+            if (mybatisObjects != null) {
+                multiDataSourceHolder.addSqlSessionFactory(name + "SqlSessionFactory", (SqlSessionFactory) mybatisObjects[0]);
+                beanFactory.registerSingleton(name + "SqlSessionFactory", mybatisObjects[0]);
+                multiDataSourceHolder.addSqlSessionTemplate(name + "SqlSessionTemplate", (SqlSessionTemplate) mybatisObjects[1]);
+                beanFactory.registerSingleton(name + "SqlSessionTemplate", mybatisObjects[1]);
+                getMybatisInitializer().registerBatchSqlWriter(name, (SqlSessionFactory) mybatisObjects[0]);
+                getMybatisInitializer().registerStreamingSqlReader(name, (SqlSessionTemplate) mybatisObjects[1]);
+            }
+        } catch (Exception e) {
+            removeBeans(name, true);
+            multiDataSourceHolder.removeDataSource(name);
+            close(dataSource);
+            throw new IllegalStateException("=========== Failed to add DataSource: " + name, e);
+        }
+        MultiDataSourceMetrics metrics = getMetrics();
+        if (metrics != null) {
+            metrics.register(name, dataSource);
+        }
+        String[] warmUps = beanFactory.getBeanNamesForType(MultiDataSourceWarmUp.class);
+        if (warmUps.length == 1 && !customDataSource.isLazy()) {
+            beanFactory.getBean(warmUps[0], MultiDataSourceWarmUp.class).warmUp(name);
+        }
+        logger.info("Added DataSource: " + name);
+        return dataSource;
+    }
+
+    /**
+     * Unregisters the datasource and closes its pool once the borrowed connections have been returned.
+     *
+     * @return completes when the pool is closed
+     */
+    public synchronized CompletableFuture<Void> removeDataSource(String name) {
+        DataSource dataSource = multiDataSourceHolder.getDataSource(name);
+        if (dataSource == null) {
+            throw new IllegalStateException("=========== Failed to remove DataSource, unknown name: " + name);
+        }
+        for (MultiDataSourceProperties.TransactionChain transactionChain : multiDataSourceHolder.getProperties().getTransactionChains()) {
+            if (transactionChain.getDataSources().contains(name)) {
+                throw new IllegalStateException("=========== Failed to remove DataSource " + name
+                        + ", it belongs to transaction chain " + transactionChain.getName());
+            }
+        }
+        for (DataSource registered : multiDataSourceHolder.getMultiDataSources().values()) {
+            if (registered instanceof ReadWriteSplittingDataSource) {
+                ReadWriteSplittingDataSource group = (ReadWriteSplittingDataSource) registered;
+                if (group.getPrimary() == dataSource || group.getReplicas().contains(dataSource)) {
+                    throw new IllegalStateException("=========== Failed to remove DataSource " + name
+                            + ", it belongs to read/write group " + group.getName());
+                }
+            } else if (registered instanceof ShardingDataSource) {
+                ShardingDataSource group = (ShardingDataSource) registered;
+                if (group.getShards().contains(dataSource)) {
+                    throw new IllegalStateException("=========== Failed to remove DataSource " + name
+                            + ", it is a shard of sharding group " + group.getName());
+                }
+            } else if (registered instanceof DynamicRoutingDataSource) {
+                DynamicRoutingDataSource group = (DynamicRoutingDataSource) registered;
+                if (name.equals(group.getDefaultTargetName())) {
+                    throw new IllegalStateException("=========== Failed to remove DataSource " + name
+                            + ", it is the default target of dynamic routing " + group.getName());
+                }
+            }
+        }
+        multiDataSourceHolder.removeDataSource(name);
+        MultiDataSourceMetrics metrics = getMetrics();
+        if (metrics != null) {
+            metrics.unregister(name);
+        }
+        MybatisMultiDataSourceInitializer mybatisInitializer = getMybatisInitializer();
+        if (mybatisInitializer != null) {
+            mybatisInitializer.removeDataSource(name);
+        }
+        // The datasource bean itself stays until the pool is drained, destroying it would close the pool right away.
+        removeBeans(name, false);
+        logger.info("Removed DataSource: " + name + ", closing its pool once idle.");
+        if (dataSource instanceof ReadWriteSplittingDataSource || dataSource instanceof ShardingDataSource
+                || dataSource instanceof DynamicRoutingDataSource) {
+            // No pool of their own, the members keep running.
+            if (dataSource instanceof ShardingDataSource) {
+                ((ShardingDataSource) dataSource).destroy();
+            }
+            removeBeans(name, true);
+            return CompletableFuture.completedFuture(null);
+        }
+        long timeout = multiDataSourceHolder.getProperties().getRetireTimeout();
+        CompletableFuture<Void> retired = new CompletableFuture<>();
+        Thread drainer = new Thread(() -> {
+            try {
+                drain(name, dataSource, timeout);
+                synchronized (this) {
+                    removeBeans(name, true);
+                }
+                close(dataSource);
+                retired.complete(null);
+            } catch (Throwable e) {
+                retired.completeExceptionally(e);
+            }
+        }, "multi-ds-retire-" + name);
+        drainer.setDaemon(true);
+        drainer.start();
+        return retired;
+    }
+
+    private MultiDataSourceMetrics getMetrics() {
+        String[] names = beanFactory.getBeanNamesForType(MultiDataSourceMetrics.class);
+        return names.length == 1 ? beanFactory.getBean(names[0], MultiDataSourceMetrics.class) : null;
+    }
+
+    private MybatisMultiDataSourceInitializer getMybatisInitializer() {
+        String[] names = beanFactory.getBeanNamesForType(MybatisMultiDataSourceInitializer.class);
+        return names.length == 1 ? beanFactory.getBean(names[0], MybatisMultiDataSourceInitializer.class) : null;
+    }
+
+    private Object[] createMybatisObjects(String name, DataSource dataSource) throws Exception {
+        MybatisMultiDataSourceInitializer initializer = getMybatisInitializer();
+        if (initializer == null) {
+            return null;
+        }
+        SqlSessionFactory sqlSessionFactory = initializer.createSqlSessionFactory(name, dataSource);
+        return new Object[]{sqlSessionFactory, initializer.createSqlSessionTemplate(name, sqlSessionFactory, dataSource)};
+    }
+
+    private void bindPoolProperties(DataSource dataSource, Map<String, ?> poolProperties) {
+        if (poolProperties != null && !poolProperties.isEmpty()) {
+            RelaxedDataBinder binder = new RelaxedDataBinder(dataSource);
+            binder.setConversionService(DefaultConversionService.getSharedInstance());
+            binder.setIgnoreUnknownFields(false);
+            binder.bind(new MutablePropertyValues(poolProperties));
+        }
+    }
+
+    private void removeBeans(String name, boolean includingDataSource) {
+        // The batch writer flushes what is pending when destroyed, while the pool is still open.
+        List<String> beanNames = new ArrayList<>(Arrays.asList(name + BatchSqlWriter.BEAN_NAME_SUFFIX, name + StreamingSqlReader.BEAN_NAME_SUFFIX, name + "SqlSessionTemplate", name + "SqlSessionFactory",
+                name + MultiDataSourceTransactionManagerAutoConfiguration.TRANSACTION_MGR_MAPPER_KEY_SUFFIX));
+        if (includingDataSource) {
+            beanNames.add(name);
+        }
+        for (String beanName : beanNames) {
+            if (beanFactory.containsBeanDefinition(beanName)) {
+                ((BeanDefinitionRegistry) beanFactory).removeBeanDefinition(beanName);
+            } else if (beanFactory.containsSingleton(beanName)) {
+                ((DefaultSingletonBeanRegistry) beanFactory).destroySingleton(beanName);
+            }
+        }
+    }
+
+    private void trackPool(String name, DataSource pool) {
+        if (multiDataSourceInitializer.needsPoolStatistics(name)) {
+            PoolStatistics.track(pool);
+        }
+    }
+
+    private void drain(String name, DataSource dataSource, long timeout) throws InterruptedException {
+        // Untracked Hikari pools start reporting their borrowed connections now.
+        PoolStatistics.track(dataSource);
+        PoolStatistics statistics = PoolStatistics.of(dataSource);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (statistics.getActiveConnections() > 0) {
+            if (System.nanoTime() - deadline > 0) {
+                logger.warn("DataSource " + name + " still has " + statistics.getActiveConnections()
+                        + " borrowed connections after " + timeout + " ms, closing it anyway.");
+                return;
+            }
+            Thread.sleep(DRAIN_POLL_INTERVAL);
+        }
+    }
+
+    /**
+     * @return closes the pool of the datasource, or destroys it if it is a {@link DisposableBean}
+     */
+    static DisposableBean closer(DataSource dataSource) {
+        return dataSource instanceof DisposableBean ? (DisposableBean) dataSource : () -> close(dataSource);
+    }
+
+    static void close(DataSource dataSource) {
+        Method close = ReflectionUtils.findMethod(dataSource.getClass(), "close");
+        if (close != null) {
+            try {
+                ReflectionUtils.invokeMethod(close, dataSource);
+            } catch (Exception e) {
+                logger.warn("Failed to close DataSource " + dataSource, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Metrics of every custom datasource pool, exported as MXBeans and through the exporters.
+ */
+public class MultiDataSourceMetrics implements SmartInitializingSingleton, DisposableBean {
+    private static final Log logger = LogFactory.getLog(MultiDataSourceMetrics.class);
+    static final String JMX_DOMAIN = "io.github.arvinrong.mds";
+
+    private final MultiDataSourceHolder multiDataSourceHolder;
+    private final List<MultiDataSourceMetricsExporter> exporters;
+    private final MBeanServer mBeanServer;
+    private final Map<String, DataSourceMetrics> metrics = new ConcurrentHashMap<>();
+
+    public MultiDataSourceMetrics(MultiDataSourceHolder multiDataSourceHolder, List<MultiDataSourceMetricsExporter> exporters) {
+        this.multiDataSourceHolder = multiDataSourceHolder;
+        this.exporters = exporters != null ? exporters : Collections.emptyList();
+        this.mBeanServer = multiDataSourceHolder.getProperties().getMetrics().isJmxEnabled() ? ManagementFactory.getPlatformMBeanServer() : null;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        for (MultiDataSourceHolder.DataSourceEntry entry : multiDataSourceHolder.getEntries()) {
+            if (entry.getDataSource() != null) {
+                register(entry.getName(), entry.getDataSource());
+            }
+        }
+    }
+
+    public DataSourceMetrics getMetrics(String dataSourceName) {
+        return metrics.get(dataSourceName);
+    }
+
+    public Collection<DataSourceMetrics> getAllMetrics() {
+        return Collections.unmodifiableCollection(metrics.values());
+    }
+
+    /**
+     * Routing datasources have no pool of their own and are skipped, their members are registered.
+     */
+    void register(String dataSourceName, DataSource dataSource) {
+        if (dataSource instanceof ReadWriteSplittingDataSource || dataSource instanceof ShardingDataSource
+                || dataSource instanceof DynamicRoutingDataSource || metrics.containsKey(dataSourceName)) {
+            return;
+        }
+        if (dataSource instanceof LazyInitializingDataSource) {
+            ((LazyInitializingDataSource) dataSource).addTargetCustomizer(PoolStatistics.TomcatPoolStatistics::installUsageInterceptor);
+        } else {
+            PoolStatistics.TomcatPoolStatistics.installUsageInterceptor(dataSource);
+        }
+        DataSourceMetrics dataSourceMetrics = new DataSourceMetrics(dataSourceName, dataSource);
+        metrics.put(dataSourceName, dataSourceMetrics);
+        if (mBeanServer != null) {
+            registerMBean(mBeanServer, dataSourceMetrics, "DataSourceMetrics", dataSourceName);
+        }
+        for (MultiDataSourceMetricsExporter exporter : exporters) {
+            exporter.register(dataSourceMetrics);
+        }
+    }
+
+    void unregister(String dataSourceName) {
+        DataSourceMetrics dataSourceMetrics = metrics.remove(dataSourceName);
+        if (dataSourceMetrics == null) {
+            return;
+        }
+        for (MultiDataSourceMetricsExporter exporter : exporters) {
+            exporter.unregister(dataSourceMetrics);
+        }
+        if (mBeanServer != null) {
+            unregisterMBean(mBeanServer, "DataSourceMetrics", dataSourceName);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        for (String dataSourceName : new ArrayList<>(metrics.keySet())) {
+            unregister(dataSourceName);
+        }
+    }
+
+    static void registerMBean(MBeanServer mBeanServer, Object mBean, String type, String dataSourceName) {
+        try {
+            mBeanServer.registerMBean(mBean, objectName(type, dataSourceName));
+        } catch (Exception e) {
+            logger.warn("Failed to register " + type + " MBean of DataSource " + dataSourceName, e);
+        }
+    }
+
+    static void unregisterMBean(MBeanServer mBeanServer, String type, String dataSourceName) {
+        try {
+            ObjectName objectName = objectName(type, dataSourceName);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to unregister " + type + " MBean of DataSource " + dataSourceName, e);
+        }
+    }
+
+    private static ObjectName objectName(String type, String dataSourceName) throws Exception {
+        return new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(dataSourceName));
+    }
+}
@@ -43,6 +43,61 @@ public class MultiDataSourceProperties implements BeanClassLoaderAware, Environm
 
     private List<CustomDataSource> dataSources = new ArrayList<>();
 
+    /**
+     * Build and warm up custom datasources concurrently instead of one after another.
+     */
+    private boolean parallelInitialization = false;
+
+    /**
+     * Upper bound of threads used when parallel initialization is enabled.
+     */
+    private int initializationThreads = 8;
+
+    /**
+     * Groups of custom datasources exposed as one datasource routing read-only transactions to replicas.
+     */
+    private List<ReadWriteGroup> readWriteGroups = new ArrayList<>();
+
+    /**
+     * Groups of custom datasources exposed as one datasource routing each call to a shard chosen by a shard key.
+     */
+    private List<ShardingGroup> shardingGroups = new ArrayList<>();
+
+    /**
+     * Transaction managers spanning several datasources, registered as "{name}TransactionManager".
+     */
+    private List<TransactionChain> transactionChains = new ArrayList<>();
+
+    /**
+     * DataSource switched per call with {@link TargetDataSource}.
+     */
+    private DynamicRouting dynamicRouting = new DynamicRouting();
+
+    /**
+     * Milliseconds a datasource removed at runtime may keep serving borrowed connections before its pool is closed.
+     */
+    private long retireTimeout = 30000;
+
+    /**
+     * Connection pool metrics of the custom datasources.
+     */
+    private Metrics metrics = new Metrics();
+
+    /**
+     * Background health probe of the custom datasources.
+     */
+    private Health health = new Health();
+
+    /**
+     * Circuit breakers of the custom datasources, applied by the routing datasources.
+     */
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * Report of the per datasource, per phase startup durations.
+     */
+    private StartupTimeline startupTimeline = new StartupTimeline();
+
     @Override
     public void setBeanClassLoader(ClassLoader classLoader) {
         this.classLoader = classLoader;
@@ -61,6 +116,658 @@ public class MultiDataSourceProperties implements BeanClassLoaderAware, Environm
         this.dataSources = dataSources;
     }
 
+    public boolean isParallelInitialization() {
+        return parallelInitialization;
+    }
+
+    public void setParallelInitialization(boolean parallelInitialization) {
+        this.parallelInitialization = parallelInitialization;
+    }
+
+    public int getInitializationThreads() {
+        return initializationThreads;
+    }
+
+    public void setInitializationThreads(int initializationThreads) {
+        this.initializationThreads = initializationThreads;
+    }
+
+    public List<ReadWriteGroup> getReadWriteGroups() {
+        return readWriteGroups;
+    }
+
+    public void setReadWriteGroups(List<ReadWriteGroup> readWriteGroups) {
+        this.readWriteGroups = readWriteGroups;
+    }
+
+    public List<ShardingGroup> getShardingGroups() {
+        return shardingGroups;
+    }
+
+    public void setShardingGroups(List<ShardingGroup> shardingGroups) {
+        this.shardingGroups = shardingGroups;
+    }
+
+    public List<TransactionChain> getTransactionChains() {
+        return transactionChains;
+    }
+
+    public void setTransactionChains(List<TransactionChain> transactionChains) {
+        this.transactionChains = transactionChains;
+    }
+
+    public long getRetireTimeout() {
+        return retireTimeout;
+    }
+
+    public void setRetireTimeout(long retireTimeout) {
+        this.retireTimeout = retireTimeout;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public Health getHealth() {
+        return health;
+    }
+
+    public void setHealth(Health health) {
+        this.health = health;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public StartupTimeline getStartupTimeline() {
+        return startupTimeline;
+    }
+
+    public void setStartupTimeline(StartupTimeline startupTimeline) {
+        this.startupTimeline = startupTimeline;
+    }
+
+    public DynamicRouting getDynamicRouting() {
+        return dynamicRouting;
+    }
+
+    public void setDynamicRouting(DynamicRouting dynamicRouting) {
+        this.dynamicRouting = dynamicRouting;
+    }
+
+    /**
+     * Names of all datasources registered by the helper.
+     *
+     * @return the datasource names in declaration order
+     */
+    public List<String> determineDataSourceNames() {
+        List<String> names = new ArrayList<>();
+        for (CustomDataSource customDataSource : dataSources) {
+            names.add(customDataSource.getName());
+        }
+        for (ReadWriteGroup readWriteGroup : readWriteGroups) {
+            names.add(readWriteGroup.getName());
+        }
+        for (ShardingGroup shardingGroup : shardingGroups) {
+            names.add(shardingGroup.getName());
+        }
+        if (StringUtils.hasText(dynamicRouting.getName())) {
+            names.add(dynamicRouting.getName());
+        }
+        return names;
+    }
+
+    public static class Mybatis {
+        /**
+         * Settings of the Mybatis Configuration like "default-fetch-size" or "default-statement-timeout", overriding "mybatis.configuration".
+         */
+        private Map<String, String> configuration = new LinkedHashMap<>();
+
+        /**
+         * Placeholder values of the mapper files, added to "mybatis.configuration-properties".
+         */
+        private Properties configurationProperties = new Properties();
+
+        public Map<String, String> getConfiguration() {
+            return configuration;
+        }
+
+        public void setConfiguration(Map<String, String> configuration) {
+            this.configuration = configuration;
+        }
+
+        public Properties getConfigurationProperties() {
+            return configurationProperties;
+        }
+
+        public void setConfigurationProperties(Properties configurationProperties) {
+            this.configurationProperties = configurationProperties;
+        }
+    }
+
+    public static class Cache {
+        /**
+         * Use a bounded MultiDataSourceCache instead of the default unbounded Mybatis cache.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Upper bound of the entries of one mapper namespace, the least recently used entries are evicted first.
+         */
+        private int maxEntries = 1024;
+
+        /**
+         * Upper bound of the serialized size of the entries of one mapper namespace, 0 for no bound. Ignored for read-only caches on the heap.
+         */
+        private long maxBytes = 0;
+
+        /**
+         * Milliseconds an entry stays valid after it has been put, 0 to keep it until it is evicted or flushed.
+         */
+        private long ttl = 0;
+
+        /**
+         * Hand out the cached objects themselves instead of deserialized copies, like a Mybatis cache declared read-only.
+         */
+        private boolean readOnly = false;
+
+        /**
+         * Keep the serialized entries in direct buffers outside of the heap.
+         */
+        private boolean offHeap = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        public long getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(long ttl) {
+            this.ttl = ttl;
+        }
+
+        public boolean isReadOnly() {
+            return readOnly;
+        }
+
+        public void setReadOnly(boolean readOnly) {
+            this.readOnly = readOnly;
+        }
+
+        public boolean isOffHeap() {
+            return offHeap;
+        }
+
+        public void setOffHeap(boolean offHeap) {
+            this.offHeap = offHeap;
+        }
+    }
+
+    public static class WarmUp {
+        /**
+         * Fill the pool to its minimum idle size and validate the connections at startup.
+         */
+        private boolean enabled = false;
+
+        /**
+         * SQL executed once after the pool is filled, e.g. to prime server side plan caches.
+         */
+        private List<String> sql = new ArrayList<>();
+
+        /**
+         * Ids of Mybatis select statements without parameters executed once after the pool is filled.
+         */
+        private List<String> statements = new ArrayList<>();
+
+        /**
+         * Fail the startup if the warm-up fails instead of logging a warning.
+         */
+        private boolean failOnError = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<String> getSql() {
+            return sql;
+        }
+
+        public void setSql(List<String> sql) {
+            this.sql = sql;
+        }
+
+        public List<String> getStatements() {
+            return statements;
+        }
+
+        public void setStatements(List<String> statements) {
+            this.statements = statements;
+        }
+
+        public boolean isFailOnError() {
+            return failOnError;
+        }
+
+        public void setFailOnError(boolean failOnError) {
+            this.failOnError = failOnError;
+        }
+    }
+
+    public static class StartupTimeline {
+        /**
+         * Log the startup timeline once the application is ready.
+         */
+        private boolean logReport = false;
+
+        /**
+         * Export the startup timeline as the MXBean "io.github.arvinrong.mds:type=StartupTimeline".
+         */
+        private boolean jmxEnabled = false;
+
+        public boolean isLogReport() {
+            return logReport;
+        }
+
+        public void setLogReport(boolean logReport) {
+            this.logReport = logReport;
+        }
+
+        public boolean isJmxEnabled() {
+            return jmxEnabled;
+        }
+
+        public void setJmxEnabled(boolean jmxEnabled) {
+            this.jmxEnabled = jmxEnabled;
+        }
+    }
+
+    public static class Health {
+        /**
+         * Probe every custom datasource in the background.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Milliseconds between two probes of a datasource.
+         */
+        private long probeInterval = 10000;
+
+        /**
+         * Milliseconds after which a probe still running reports the datasource as down.
+         */
+        private long probeTimeout = 5000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getProbeInterval() {
+            return probeInterval;
+        }
+
+        public void setProbeInterval(long probeInterval) {
+            this.probeInterval = probeInterval;
+        }
+
+        public long getProbeTimeout() {
+            return probeTimeout;
+        }
+
+        public void setProbeTimeout(long probeTimeout) {
+            this.probeTimeout = probeTimeout;
+        }
+    }
+
+    public static class CircuitBreaker {
+        /**
+         * Fail fast on connections of a custom datasource after consecutive failures.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Consecutive failed connection acquisitions or probes opening the breaker.
+         */
+        private int failureThreshold = 5;
+
+        /**
+         * Milliseconds connections are refused before a trial acquisition is let through.
+         */
+        private long openDuration = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+
+        public void setFailureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+        }
+
+        public long getOpenDuration() {
+            return openDuration;
+        }
+
+        public void setOpenDuration(long openDuration) {
+            this.openDuration = openDuration;
+        }
+    }
+
+    public static class Metrics {
+        /**
+         * Record and publish pool metrics of every custom datasource.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Export the metrics as MXBeans.
+         */
+        private boolean jmxEnabled = true;
+
+        /**
+         * Record latencies of the Mybatis statements of every datasource, independently of "enabled".
+         */
+        private boolean statementsEnabled = false;
+
+        /**
+         * Milliseconds after which a statement is kept as a slow statement sample, 0 keeps none.
+         */
+        private long slowStatementThreshold = 1000;
+
+        /**
+         * Number of the most recent slow statements kept per datasource.
+         */
+        private int slowStatementSamples = 20;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isJmxEnabled() {
+            return jmxEnabled;
+        }
+
+        public void setJmxEnabled(boolean jmxEnabled) {
+            this.jmxEnabled = jmxEnabled;
+        }
+
+        public boolean isStatementsEnabled() {
+            return statementsEnabled;
+        }
+
+        public void setStatementsEnabled(boolean statementsEnabled) {
+            this.statementsEnabled = statementsEnabled;
+        }
+
+        public long getSlowStatementThreshold() {
+            return slowStatementThreshold;
+        }
+
+        public void setSlowStatementThreshold(long slowStatementThreshold) {
+            this.slowStatementThreshold = slowStatementThreshold;
+        }
+
+        public int getSlowStatementSamples() {
+            return slowStatementSamples;
+        }
+
+        public void setSlowStatementSamples(int slowStatementSamples) {
+            this.slowStatementSamples = slowStatementSamples;
+        }
+    }
+
+    public static class DynamicRouting {
+        /**
+         * Name of the routing datasource, enables {@link TargetDataSource} when set.
+         */
+        private String name;
+
+        /**
+         * Datasource used when no {@link TargetDataSource} is active. Defaults to the "dataSource" bean.
+         */
+        private String defaultTarget;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getDefaultTarget() {
+            return defaultTarget;
+        }
+
+        public void setDefaultTarget(String defaultTarget) {
+            this.defaultTarget = defaultTarget;
+        }
+    }
+
+    public static class ReadWriteGroup {
+        /**
+         * Name of the routing datasource, used as bean name like the name of a custom datasource.
+         */
+        private String name;
+
+        /**
+         * Name of the custom datasource receiving writes and non read-only transactions.
+         */
+        private String primary;
+
+        /**
+         * Names of the custom datasources serving read-only transactions.
+         */
+        private List<String> replicas = new ArrayList<>();
+
+        /**
+         * Replica load balancer: round-robin, weighted, least-active, ewma-latency or a class name.
+         */
+        private String loadBalancer = ReplicaLoadBalancers.ROUND_ROBIN;
+
+        /**
+         * Weights of the replicas in the same order, used by the weighted strategy. Defaults to 1 each.
+         */
+        private List<Integer> weights = new ArrayList<>();
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getPrimary() {
+            return primary;
+        }
+
+        public void setPrimary(String primary) {
+            this.primary = primary;
+        }
+
+        public List<String> getReplicas() {
+            return replicas;
+        }
+
+        public void setReplicas(List<String> replicas) {
+            this.replicas = replicas;
+        }
+
+        public String getLoadBalancer() {
+            return loadBalancer;
+        }
+
+        public void setLoadBalancer(String loadBalancer) {
+            this.loadBalancer = loadBalancer;
+        }
+
+        public List<Integer> getWeights() {
+            return weights;
+        }
+
+        public void setWeights(List<Integer> weights) {
+            this.weights = weights;
+        }
+    }
+
+    public static class TransactionChain {
+        /**
+         * Name of the chain, the transaction manager is registered as "{name}TransactionManager".
+         */
+        private String name;
+
+        /**
+         * Datasources of the chain, in begin order.
+         */
+        private List<String> dataSources = new ArrayList<>();
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public List<String> getDataSources() {
+            return dataSources;
+        }
+
+        public void setDataSources(List<String> dataSources) {
+            this.dataSources = dataSources;
+        }
+    }
+
+    public static class ShardingGroup {
+        /**
+         * Name of the sharding datasource, used as bean name like the name of a custom datasource.
+         */
+        private String name;
+
+        /**
+         * Names of the custom datasources holding the shards, shard keys are mapped to indexes of this list.
+         */
+        private List<String> shards = new ArrayList<>();
+
+        /**
+         * Sharding strategy: hash, range, lookup or a class name.
+         */
+        private String strategy = ShardingStrategies.HASH;
+
+        /**
+         * Exclusive upper bounds of the shards but the last in ascending order, used by the range strategy.
+         */
+        private List<Long> rangeBounds = new ArrayList<>();
+
+        /**
+         * Shard name per shard key, used by the lookup strategy.
+         */
+        private Map<String, String> lookup = new LinkedHashMap<>();
+
+        /**
+         * Threads querying the shards of a scatter-gather call. Defaults to the number of shards.
+         */
+        private int scatterGatherThreads = 0;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public List<String> getShards() {
+            return shards;
+        }
+
+        public void setShards(List<String> shards) {
+            this.shards = shards;
+        }
+
+        public String getStrategy() {
+            return strategy;
+        }
+
+        public void setStrategy(String strategy) {
+            this.strategy = strategy;
+        }
+
+        public List<Long> getRangeBounds() {
+            return rangeBounds;
+        }
+
+        public void setRangeBounds(List<Long> rangeBounds) {
+            this.rangeBounds = rangeBounds;
+        }
+
+        public Map<String, String> getLookup() {
+            return lookup;
+        }
+
+        public void setLookup(Map<String, String> lookup) {
+            this.lookup = lookup;
+        }
+
+        public int getScatterGatherThreads() {
+            return scatterGatherThreads;
+        }
+
+        public void setScatterGatherThreads(int scatterGatherThreads) {
+            this.scatterGatherThreads = scatterGatherThreads;
+        }
+    }
+
     public static class CustomDataSource {
         /**
          * Name of the datasource.
@@ -105,8 +812,7 @@ public class MultiDataSourceProperties implements BeanClassLoaderAware, Environm
         private String jndiName;
 
         /**
-         * Uses by SpringBoot datasource autoconfiguration, doesn't applicable for our custom datasource.
-         * Should be false always.
+         * Run the schema and data scripts of this datasource at startup.
          */
         private boolean initialize = false;
 
@@ -161,6 +867,56 @@ public class MultiDataSourceProperties implements BeanClassLoaderAware, Environm
          */
         private Charset sqlScriptEncoding;
 
+        /**
+         * Mapper group shared with other datasources of an identical schema.
+         */
+        private String mapperGroup;
+
+        /**
+         * Locations of the Mybatis mapper files of this datasource.
+         */
+        private List<String> mapperLocations;
+
+        /**
+         * Create the connection pool and the Mybatis SqlSessionFactory on first use instead of at startup.
+         */
+        private boolean lazy = false;
+
+        /**
+         * Mybatis executor type of this datasource: SIMPLE, REUSE or BATCH. Defaults to "mybatis.executor-type".
+         */
+        private String executorType;
+
+        /**
+         * Statements buffered by the BatchSqlWriter of a BATCH datasource before they are flushed.
+         */
+        private int batchSize = 1000;
+
+        /**
+         * Milliseconds buffered statements may wait in the BatchSqlWriter of a BATCH datasource before they are flushed.
+         */
+        private long batchFlushInterval = 1000;
+
+        /**
+         * Rows fetched per round trip by the StreamingSqlReader of this datasource. MySQL streams row by row unless the url sets useCursorFetch=true.
+         */
+        private int streamFetchSize = 1000;
+
+        /**
+         * Connections and statements prepared at startup, before the application is ready.
+         */
+        private WarmUp warmUp = new WarmUp();
+
+        /**
+         * Second level cache of the mappers declaring a cache without a type.
+         */
+        private Cache cache = new Cache();
+
+        /**
+         * Mybatis settings of this datasource merged over the global "mybatis" settings.
+         */
+        private Mybatis mybatis = new Mybatis();
+
         private EmbeddedDatabaseConnection embeddedDatabaseConnection = EmbeddedDatabaseConnection.NONE;
 
         private DataSourceProperties.Xa xa = new DataSourceProperties.Xa();
@@ -380,12 +1136,8 @@ public class MultiDataSourceProperties implements BeanClassLoaderAware, Environm
             return this.initialize;
         }
 
-        /*
-         * Force initialize be false in case of SQL scripts running on a wrong datasource
-         * instance during SpringBoot datasource autoconfiguration.
-         */
         public void setInitialize(boolean initialize) {
-            this.initialize = false;
+            this.initialize = initialize;
         }
 
         public String getPlatform() {
@@ -468,6 +1220,86 @@ public class MultiDataSourceProperties implements BeanClassLoaderAware, Environm
             this.sqlScriptEncoding = sqlScriptEncoding;
         }
 
+        public String getMapperGroup() {
+            return this.mapperGroup;
+        }
+
+        public void setMapperGroup(String mapperGroup) {
+            this.mapperGroup = mapperGroup;
+        }
+
+        public List<String> getMapperLocations() {
+            return this.mapperLocations;
+        }
+
+        public void setMapperLocations(List<String> mapperLocations) {
+            this.mapperLocations = mapperLocations;
+        }
+
+        public boolean isLazy() {
+            return this.lazy;
+        }
+
+        public void setLazy(boolean lazy) {
+            this.lazy = lazy;
+        }
+
+        public String getExecutorType() {
+            return executorType;
+        }
+
+        public void setExecutorType(String executorType) {
+            this.executorType = executorType;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public long getBatchFlushInterval() {
+            return batchFlushInterval;
+        }
+
+        public void setBatchFlushInterval(long batchFlushInterval) {
+            this.batchFlushInterval = batchFlushInterval;
+        }
+
+        public int getStreamFetchSize() {
+            return streamFetchSize;
+        }
+
+        public void setStreamFetchSize(int streamFetchSize) {
+            this.streamFetchSize = streamFetchSize;
+        }
+
+        public WarmUp getWarmUp() {
+            return warmUp;
+        }
+
+        public void setWarmUp(WarmUp warmUp) {
+            this.warmUp = warmUp;
+        }
+
+        public Cache getCache() {
+            return cache;
+        }
+
+        public void setCache(Cache cache) {
+            this.cache = cache;
+        }
+
+        public Mybatis getMybatis() {
+            return mybatis;
+        }
+
+        public void setMybatis(Mybatis mybatis) {
+            this.mybatis = mybatis;
+        }
+
 
         public DataSourceProperties.Xa getXa() {
             return this.xa;
@@ -0,0 +1,208 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
+
+import java.util.*;
+
+/**
+ * Index of the "system.db" list properties of the property sources of the {@link Environment}.
+ */
+final class MultiDataSourcePropertyIndex {
+    static final String DATA_SOURCES = "data-sources";
+    static final String READ_WRITE_GROUPS = "read-write-groups";
+    static final String SHARDING_GROUPS = "sharding-groups";
+    static final String DYNAMIC_ROUTING = "dynamic-routing";
+    private static final String PREFIX = normalize(MultiDataSourceProperties.MULTI_DATA_SOURCE_PREFIX + ".");
+    private static final String DYNAMIC_ROUTING_PREFIX = normalize(DYNAMIC_ROUTING + ".");
+    private static final Map<Environment, MultiDataSourcePropertyIndex> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final Map<String, SortedMap<Integer, Map<String, Object>>> lists = new HashMap<>();
+    private final Map<String, Object> dynamicRouting = new HashMap<>();
+    private final Map<String, Map<String, Object>> sections = new HashMap<>();
+    private final int[] propertySourceIds;
+
+    private MultiDataSourcePropertyIndex(ConfigurableEnvironment environment) {
+        this.propertySourceIds = propertySourceIds(environment);
+        for (PropertySource<?> propertySource : environment.getPropertySources()) {
+            if (propertySource instanceof EnumerablePropertySource) {
+                index(environment, (EnumerablePropertySource<?>) propertySource);
+            }
+        }
+    }
+
+    static MultiDataSourcePropertyIndex of(Environment environment) {
+        if (!(environment instanceof ConfigurableEnvironment)) {
+            throw new IllegalStateException("Multi datasources feature requires a ConfigurableEnvironment.");
+        }
+        ConfigurableEnvironment configurableEnvironment = (ConfigurableEnvironment) environment;
+        synchronized (CACHE) {
+            MultiDataSourcePropertyIndex index = CACHE.get(environment);
+            if (index == null || !Arrays.equals(index.propertySourceIds, propertySourceIds(configurableEnvironment))) {
+                index = new MultiDataSourcePropertyIndex(configurableEnvironment);
+                CACHE.put(environment, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Identities rather than the sources themselves, the cached index must not keep the environment reachable.
+     */
+    private static int[] propertySourceIds(ConfigurableEnvironment environment) {
+        List<PropertySource<?>> propertySources = new ArrayList<>();
+        for (PropertySource<?> propertySource : environment.getPropertySources()) {
+            propertySources.add(propertySource);
+        }
+        int[] ids = new int[propertySources.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = System.identityHashCode(propertySources.get(i));
+        }
+        return ids;
+    }
+
+    private void index(Environment environment, EnumerablePropertySource<?> propertySource) {
+        for (String propertyName : propertySource.getPropertyNames()) {
+            String name = normalize(propertyName);
+            if (!name.startsWith(PREFIX)) {
+                continue;
+            }
+            String relativeName = name.substring(PREFIX.length());
+            Map<String, Object> element = element(relativeName);
+            String key;
+            if (element != null) {
+                key = relativeName.substring(relativeName.indexOf(']') + 2);
+            } else if (relativeName.startsWith(DYNAMIC_ROUTING_PREFIX)) {
+                element = dynamicRouting;
+                key = relativeName.substring(DYNAMIC_ROUTING_PREFIX.length());
+            } else {
+                continue;
+            }
+            if (!element.containsKey(key)) {
+                Object value = propertySource.getProperty(propertyName);
+                value = value instanceof String ? environment.resolvePlaceholders((String) value) : value;
+                element.put(key, value);
+                if (element != dynamicRouting) {
+                    indexSection(name, propertyName, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a property to the section of its element under the name relative to the section.
+     */
+    private void indexSection(String name, String propertyName, Object value) {
+        int sectionEnd = name.indexOf('.', name.indexOf(']', PREFIX.length()) + 2);
+        if (sectionEnd < 0) {
+            return;
+        }
+        int originalSectionEnd = propertyName.indexOf('.', propertyName.indexOf(']') + 2);
+        sections.computeIfAbsent(name.substring(0, sectionEnd), key -> new LinkedHashMap<>())
+                .put(propertyName.substring(originalSectionEnd + 1), value);
+    }
+
+    /**
+     * @return the properties of the list element a relative name like "data-sources[2].url" belongs to
+     */
+    private Map<String, Object> element(String relativeName) {
+        int open = relativeName.indexOf('[');
+        int close = relativeName.indexOf(']');
+        if (open <= 0 || close < open || relativeName.length() < close + 2 || relativeName.charAt(close + 1) != '.') {
+            return null;
+        }
+        String list = relativeName.substring(0, open);
+        if (!list.equals(normalize(DATA_SOURCES)) && !list.equals(normalize(READ_WRITE_GROUPS))
+                && !list.equals(normalize(SHARDING_GROUPS))) {
+            return null;
+        }
+        int index;
+        try {
+            index = Integer.parseInt(relativeName.substring(open + 1, close));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return lists.computeIfAbsent(list, key -> new TreeMap<>()).computeIfAbsent(index, key -> new HashMap<>());
+    }
+
+    /**
+     * Lower case without dashes and underscores.
+     */
+    static String normalize(String propertyName) {
+        StringBuilder normalized = new StringBuilder(propertyName.length());
+        for (int i = 0; i < propertyName.length(); i++) {
+            char c = propertyName.charAt(i);
+            if (c != '-' && c != '_') {
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * @return the elements of "data-sources", "read-write-groups" or "sharding-groups" in index order, keyed by their normalized relative property names
+     */
+    List<Map<String, Object>> getElements(String list) {
+        SortedMap<Integer, Map<String, Object>> elements = lists.get(normalize(list));
+        return elements != null ? new ArrayList<>(elements.values()) : Collections.emptyList();
+    }
+
+    /**
+     * @param prefix a nested section of a list element, like "system.db.data-sources[3].hikari"
+     * @return the properties of the section relative to the prefix, ready for a relaxed data binder
+     */
+    Map<String, Object> getSection(String prefix) {
+        Map<String, Object> section = sections.get(normalize(prefix));
+        return section != null ? section : Collections.emptyMap();
+    }
+
+    Map<String, Object> getDynamicRouting() {
+        return dynamicRouting;
+    }
+
+    /**
+     * @return a property of an element with placeholders resolved, {@code null} if it isn't set
+     */
+    static String getProperty(Map<String, Object> element, String name) {
+        Object value = element.get(normalize(name));
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * @return the names of the custom datasources, the read/write and sharding groups and the dynamic routing datasource,
+     * in the order of {@link MultiDataSourceProperties#determineDataSourceNames()}
+     */
+    List<String> determineDataSourceNames() {
+        List<String> names = new ArrayList<>();
+        for (String list : new String[]{DATA_SOURCES, READ_WRITE_GROUPS, SHARDING_GROUPS}) {
+            for (Map<String, Object> element : getElements(list)) {
+                String name = getProperty(element, "name");
+                if (name != null && !name.isEmpty()) {
+                    names.add(name);
+                }
+            }
+        }
+        String dynamicRoutingName = getProperty(dynamicRouting, "name");
+        if (dynamicRoutingName != null && !dynamicRoutingName.isEmpty()) {
+            names.add(dynamicRoutingName);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.config.SingletonBeanRegistry;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+
+import javax.management.MBeanServer;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per datasource, per phase durations of the startup.
+ */
+public class MultiDataSourceStartupTimeline {
+    private static final Log logger = LogFactory.getLog(MultiDataSourceStartupTimeline.class);
+    static final String BEAN_NAME = "multiDataSourceStartupTimeline";
+    private static final String ALL_DATA_SOURCES = "*";
+
+    private final long origin = System.nanoTime();
+    private final Queue<Step> steps = new ConcurrentLinkedQueue<>();
+    private volatile boolean recording = true;
+
+    /**
+     * @return the timeline registered in the bean factory, registering one if needed
+     */
+    static MultiDataSourceStartupTimeline of(Object beanFactory) {
+        if (!(beanFactory instanceof SingletonBeanRegistry)) {
+            return new MultiDataSourceStartupTimeline();
+        }
+        SingletonBeanRegistry registry = (SingletonBeanRegistry) beanFactory;
+        synchronized (registry) {
+            Object timeline = registry.getSingleton(BEAN_NAME);
+            if (timeline == null) {
+                timeline = new MultiDataSourceStartupTimeline();
+                registry.registerSingleton(BEAN_NAME, timeline);
+            }
+            return (MultiDataSourceStartupTimeline) timeline;
+        }
+    }
+
+    /**
+     * Starts timing a phase, the step is recorded when it is closed.
+     *
+     * @param dataSourceName the datasource, {@code null} for a phase covering all datasources
+     */
+    Step start(String dataSourceName, String phase) {
+        return new Step(dataSourceName != null ? dataSourceName : ALL_DATA_SOURCES, phase);
+    }
+
+    void stopRecording() {
+        recording = false;
+    }
+
+    /**
+     * @return the recorded steps ordered by start time
+     */
+    public List<Step> getSteps() {
+        List<Step> sorted = new ArrayList<>(steps);
+        sorted.sort(Comparator.comparingLong(step -> step.startNanos));
+        return sorted;
+    }
+
+    /**
+     * @return milliseconds spent in every phase, summed over all datasources
+     */
+    public Map<String, Long> getPhaseTotals() {
+        Map<String, Long> totals = new LinkedHashMap<>();
+        for (Step step : getSteps()) {
+            totals.merge(step.phase, step.getDurationMillis(), Long::sum);
+        }
+        return totals;
+    }
+
+    /**
+     * Phases with their total and slowest step, then the steps of every datasource.
+     */
+    public String getReport() {
+        List<Step> sorted = getSteps();
+        Map<String, List<Step>> byPhase = new LinkedHashMap<>();
+        Map<String, List<Step>> byDataSource = new LinkedHashMap<>();
+        long end = 0;
+        for (Step step : sorted) {
+            byPhase.computeIfAbsent(step.phase, phase -> new ArrayList<>()).add(step);
+            byDataSource.computeIfAbsent(step.dataSourceName, name -> new ArrayList<>()).add(step);
+            end = Math.max(end, step.getStartMillis() + step.getDurationMillis());
+        }
+        StringBuilder report = new StringBuilder();
+        report.append("Multi datasource startup timeline, ").append(sorted.size()).append(" steps in ").append(end).append(" ms\n");
+        report.append(String.format("%-28s %6s %10s %10s  %s%n", "phase", "steps", "total ms", "max ms", "slowest"));
+        for (Map.Entry<String, List<Step>> phase : byPhase.entrySet()) {
+            Step slowest = null;
+            long total = 0;
+            for (Step step : phase.getValue()) {
+                total += step.getDurationMillis();
+                if (slowest == null || step.durationNanos > slowest.durationNanos) {
+                    slowest = step;
+                }
+            }
+            report.append(String.format("%-28s %6d %10d %10d  %s%n", phase.getKey(), phase.getValue().size(), total,
+                    slowest.getDurationMillis(), slowest.dataSourceName));
+        }
+        for (Map.Entry<String, List<Step>> dataSource : byDataSource.entrySet()) {
+            report.append(dataSource.getKey()).append(':');
+            for (Step step : dataSource.getValue()) {
+                report.append(' ').append(step.phase).append(' ').append(step.getDurationMillis()).append(" ms (+")
+                        .append(step.getStartMillis()).append(");");
+            }
+            report.append('\n');
+        }
+        return report.toString();
+    }
+
+    public final class Step implements AutoCloseable {
+        private final String dataSourceName;
+        private final String phase;
+        private final String thread;
+        private final long startNanos;
+        private long durationNanos = -1;
+
+        private Step(String dataSourceName, String phase) {
+            this.dataSourceName = dataSourceName;
+            this.phase = phase;
+            this.thread = Thread.currentThread().getName();
+            this.startNanos = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (durationNanos < 0 && recording) {
+                durationNanos = System.nanoTime() - startNanos;
+                steps.add(this);
+            }
+        }
+
+        /**
+         * @return the datasource name, "*" for phases covering all datasources
+         */
+        public String getDataSourceName() {
+            return dataSourceName;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        /**
+         * @return milliseconds between the first recording component starting and this step
+         */
+        public long getStartMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(startNanos - origin);
+        }
+
+        public long getDurationMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        }
+
+        @Override
+        public String toString() {
+            return dataSourceName + " " + phase + " " + getDurationMillis() + " ms";
+        }
+    }
+
+    /**
+     * Ends the recording once the application is ready, then reports and exports the timeline.
+     */
+    static class Reporter implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+        private final MultiDataSourceStartupTimeline timeline;
+        private final MultiDataSourceProperties.StartupTimeline properties;
+        private MBeanServer mBeanServer;
+        private String contextId;
+
+        Reporter(MultiDataSourceStartupTimeline timeline, MultiDataSourceProperties.StartupTimeline properties) {
+            this.timeline = timeline;
+            this.properties = properties;
+        }
+
+        @Override
+        public void onApplicationEvent(ApplicationReadyEvent event) {
+            if (!timeline.recording) {
+                return;
+            }
+            timeline.stopRecording();
+            if (properties.isLogReport()) {
+                logger.info(timeline.getReport());
+            }
+            if (properties.isJmxEnabled()) {
+                mBeanServer = ManagementFactory.getPlatformMBeanServer();
+                contextId = event.getApplicationContext().getId();
+                MultiDataSourceMetrics.registerMBean(mBeanServer, new MBean(timeline), "StartupTimeline", contextId);
+            }
+        }
+
+        @Override
+        public void destroy() {
+            if (mBeanServer != null) {
+                MultiDataSourceMetrics.unregisterMBean(mBeanServer, "StartupTimeline", contextId);
+            }
+        }
+    }
+
+    /**
+     * Kept apart from the timeline so that Spring's MBean exporter doesn't pick up the singleton as well.
+     */
+    private static class MBean implements MultiDataSourceStartupTimelineMXBean {
+        private final MultiDataSourceStartupTimeline timeline;
+
+        MBean(MultiDataSourceStartupTimeline timeline) {
+            this.timeline = timeline;
+        }
+
+        @Override
+        public Map<String, Long> getPhaseTotals() {
+            return timeline.getPhaseTotals();
+        }
+
+        @Override
+        public String getReport() {
+            return timeline.getReport();
+        }
+    }
+}
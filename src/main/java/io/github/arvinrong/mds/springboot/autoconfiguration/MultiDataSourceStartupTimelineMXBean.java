@@ -0,0 +1,31 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link MultiDataSourceStartupTimeline}.
+ */
+public interface MultiDataSourceStartupTimelineMXBean {
+
+    /**
+     * @return milliseconds spent in every phase, summed over all datasources
+     */
+    Map<String, Long> getPhaseTotals();
+
+    String getReport();
+}
@@ -0,0 +1,173 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs one task per datasource name on a bounded pool, results in the order of the names.
+ */
+final class MultiDataSourceTasks {
+
+    interface Task<T> {
+        T run(String name) throws Exception;
+    }
+
+    interface Discard<T> {
+        void discard(String name, T result);
+    }
+
+    private MultiDataSourceTasks() {
+    }
+
+    static <T> Map<String, T> runAll(String phase, List<String> names, int threads, Task<T> task) {
+        return runAll(phase, names, threads, task, null);
+    }
+
+    /**
+     * @param discard releases the results of the tasks that succeeded when another one fails, including
+     *                results of tasks still running at that point, which are released when they finish
+     */
+    static <T> Map<String, T> runAll(String phase, List<String> names, int threads, Task<T> task, Discard<T> discard) {
+        Results<T> results = new Results<>(discard);
+        if (names.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+        if (threads <= 1 || names.size() == 1) {
+            for (String name : names) {
+                try {
+                    results.complete(name, task.run(name));
+                } catch (Exception e) {
+                    results.fail();
+                    throw failure(phase, name, e);
+                }
+            }
+            return results.inOrder(names);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, names.size()), new NamedThreadFactory(phase));
+        try {
+            List<Future<T>> futures = new ArrayList<>(names.size());
+            for (String name : names) {
+                futures.add(executor.submit(() -> results.complete(name, task.run(name))));
+            }
+            for (int i = 0; i < names.size(); i++) {
+                String name = names.get(i);
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    cancel(futures);
+                    results.fail();
+                    throw failure(phase, name, e.getCause());
+                } catch (InterruptedException e) {
+                    cancel(futures);
+                    results.fail();
+                    Thread.currentThread().interrupt();
+                    throw failure(phase, name, e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results.inOrder(names);
+    }
+
+    /**
+     * Results in the order of the names, whatever order the tasks complete in.
+     */
+    private static class Results<T> {
+        private final Discard<T> discard;
+        private final Map<String, T> unordered = new HashMap<>();
+        private boolean failed;
+
+        Results(Discard<T> discard) {
+            this.discard = discard;
+        }
+
+        T complete(String name, T result) {
+            synchronized (this) {
+                if (!failed) {
+                    unordered.put(name, result);
+                    return result;
+                }
+            }
+            if (discard != null) {
+                discard.discard(name, result);
+            }
+            return result;
+        }
+
+        synchronized Map<String, T> inOrder(List<String> names) {
+            Map<String, T> ordered = new LinkedHashMap<>();
+            for (String name : names) {
+                ordered.put(name, unordered.get(name));
+            }
+            return ordered;
+        }
+
+        void fail() {
+            Map<String, T> succeeded;
+            synchronized (this) {
+                failed = true;
+                succeeded = new HashMap<>(unordered);
+                unordered.clear();
+            }
+            if (discard != null) {
+                for (Map.Entry<String, T> entry : succeeded.entrySet()) {
+                    discard.discard(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    private static void cancel(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private static IllegalStateException failure(String phase, String name, Throwable cause) {
+        if (cause instanceof IllegalStateException && cause.getMessage() != null && cause.getMessage().contains(name)) {
+            return (IllegalStateException) cause;
+        }
+        return new IllegalStateException("============ Failed to " + phase + " for DataSource: " + name, cause);
+    }
+
+    static class NamedThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+        private final String prefix;
+
+        NamedThreadFactory(String phase) {
+            this.prefix = "multi-ds-" + phase.replace(' ', '-') + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -29,9 +29,13 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.transaction.PlatformTransactionManager;
 
+import org.springframework.util.StringUtils;
+
 import javax.annotation.PostConstruct;
 import javax.sql.DataSource;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 
@@ -42,8 +46,6 @@ public class MultiDataSourceTransactionManagerAutoConfiguration {
 
     public final static String TRANSACTION_MGR_MAPPER_KEY_SUFFIX = "TransactionManager";
 
-    private static Boolean isInitialized = false;
-
     @Configuration
     static class MultiDataSourceTransactionManagerConfiguration {
 
@@ -53,6 +55,8 @@ public class MultiDataSourceTransactionManagerAutoConfiguration {
 
         private BeanFactory beanFactory;
 
+        private boolean isInitialized = false;
+
         MultiDataSourceTransactionManagerConfiguration(MultiDataSourceHolder multiDataSourceHolder,
                                                        ObjectProvider<TransactionManagerCustomizers> transactionManagerCustomizers, BeanFactory beanFactory) {
             this.multiDataSourceHolder = multiDataSourceHolder;
@@ -77,9 +81,45 @@ public class MultiDataSourceTransactionManagerAutoConfiguration {
                 }
                 createPlatformTransactionManagerBean(dataSourceKey + TRANSACTION_MGR_MAPPER_KEY_SUFFIX, transactionManager);
             }
+            for (MultiDataSourceProperties.TransactionChain transactionChain : multiDataSourceHolder.getProperties().getTransactionChains()) {
+                createChainedTransactionManagerBean(transactionChain);
+            }
             isInitialized = true;
         }
 
+        /**
+         * Registers "{name}TransactionManager" of a transaction chain.
+         */
+        private void createChainedTransactionManagerBean(MultiDataSourceProperties.TransactionChain transactionChain) {
+            String name = transactionChain.getName();
+            if (!StringUtils.hasText(name) || transactionChain.getDataSources().isEmpty()) {
+                throw new IllegalStateException("============ Failed to create transaction chain " + name + ", a name and its data-sources are required.");
+            }
+            String transactionManagerBeanName = name + TRANSACTION_MGR_MAPPER_KEY_SUFFIX;
+            BeanDefinitionRegistry registry = (BeanDefinitionRegistry) beanFactory;
+            if (multiDataSourceHolder.getDataSource(name) != null || registry.containsBeanDefinition(transactionManagerBeanName)) {
+                throw new IllegalStateException("============ Failed to create transaction chain " + name + ", "
+                        + transactionManagerBeanName + " already exists.");
+            }
+            List<DataSourceTransactionManager> transactionManagers = new ArrayList<>();
+            for (String dataSourceName : transactionChain.getDataSources()) {
+                PlatformTransactionManager transactionManager = multiDataSourceHolder.getMultiPlatformTransactionManager()
+                        .get(dataSourceName + TRANSACTION_MGR_MAPPER_KEY_SUFFIX);
+                if (!(transactionManager instanceof DataSourceTransactionManager)) {
+                    throw new IllegalStateException("============ Failed to create transaction chain " + name + ", unknown DataSource: " + dataSourceName);
+                }
+                transactionManagers.add((DataSourceTransactionManager) transactionManager);
+            }
+            GenericBeanDefinition beanDefinition = new GenericBeanDefinition();
+            beanDefinition.setRole(BeanDefinition.ROLE_APPLICATION);
+            beanDefinition.setBeanClass(ChainedTransactionManager.class);
+            beanDefinition.getConstructorArgumentValues().addIndexedArgumentValue(0, name);
+            beanDefinition.getConstructorArgumentValues().addIndexedArgumentValue(1, new ArrayList<>(transactionChain.getDataSources()));
+            beanDefinition.getConstructorArgumentValues().addIndexedArgumentValue(2, transactionManagers);
+            registry.registerBeanDefinition(transactionManagerBeanName, beanDefinition);
+            beanFactory.getBean(transactionManagerBeanName);
+        }
+
         private void createPlatformTransactionManagerBean(String transactionManagerBeanName, PlatformTransactionManager transactionManager) {
             BeanDefinitionRegistry registry = (BeanDefinitionRegistry) beanFactory;
             if (!registry.containsBeanDefinition(transactionManagerBeanName)) {
@@ -0,0 +1,146 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.jdbc.DatabaseDriver;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Warms up the custom datasources declaring "warm-up.enabled" once all singletons exist.
+ */
+public class MultiDataSourceWarmUp implements SmartInitializingSingleton {
+    private static final Log logger = LogFactory.getLog(MultiDataSourceWarmUp.class);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private final MultiDataSourceHolder multiDataSourceHolder;
+    private final MultiDataSourceStartupTimeline startupTimeline;
+
+    public MultiDataSourceWarmUp(MultiDataSourceHolder multiDataSourceHolder, MultiDataSourceStartupTimeline startupTimeline) {
+        this.multiDataSourceHolder = multiDataSourceHolder;
+        this.startupTimeline = startupTimeline;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        List<String> names = new ArrayList<>();
+        for (Map.Entry<String, MultiDataSourceProperties.CustomDataSource> entry : multiDataSourceHolder.getCustomDataSources().entrySet()) {
+            if (entry.getValue().getWarmUp().isEnabled() && !entry.getValue().isLazy()) {
+                names.add(entry.getKey());
+            }
+        }
+        if (names.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        MultiDataSourceTasks.runAll("warm up", names, multiDataSourceHolder.getProperties().getInitializationThreads(), name -> {
+            warmUp(name);
+            return name;
+        });
+        logger.info("Warmed up " + names.size() + " DataSources in " + (System.currentTimeMillis() - start) + " ms.");
+    }
+
+    /**
+     * Warms up one datasource if it declares "warm-up.enabled".
+     */
+    public void warmUp(String name) {
+        MultiDataSourceProperties.CustomDataSource customDataSource = multiDataSourceHolder.getCustomDataSources().get(name);
+        DataSource dataSource = multiDataSourceHolder.getDataSource(name);
+        if (customDataSource == null || dataSource == null || !customDataSource.getWarmUp().isEnabled()) {
+            return;
+        }
+        MultiDataSourceProperties.WarmUp warmUp = customDataSource.getWarmUp();
+        MultiDataSourceStartupTimeline.Step step = startupTimeline.start(name, "warm up");
+        try {
+            fill(customDataSource, dataSource);
+            executeSql(dataSource, warmUp.getSql());
+            executeStatements(name, warmUp.getStatements());
+        } catch (Exception e) {
+            if (warmUp.isFailOnError()) {
+                throw new IllegalStateException("============ Failed to warm up DataSource: " + name, e);
+            }
+            logger.warn("Failed to warm up DataSource " + name + ", it is warmed up by its first requests instead.", e);
+        } finally {
+            step.close();
+        }
+    }
+
+    /**
+     * Borrows and validates as many connections as the pool keeps idle.
+     */
+    private void fill(MultiDataSourceProperties.CustomDataSource customDataSource, DataSource dataSource) throws Exception {
+        PoolStatistics statistics = PoolStatistics.of(dataSource);
+        int connections = Math.max(1, statistics.getMinimumIdle());
+        if (statistics.getMaximumPoolSize() > 0) {
+            connections = Math.min(connections, statistics.getMaximumPoolSize());
+        }
+        String validationQuery = DatabaseDriver.fromJdbcUrl(customDataSource.determineUrl()).getValidationQuery();
+        List<Connection> borrowed = new ArrayList<>(connections);
+        try {
+            for (int i = 0; i < connections; i++) {
+                Connection connection = dataSource.getConnection();
+                borrowed.add(connection);
+                if (validationQuery != null) {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute(validationQuery);
+                    }
+                } else if (!connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                    throw new IllegalStateException("Connection failed validation.");
+                }
+            }
+        } finally {
+            for (Connection connection : borrowed) {
+                connection.close();
+            }
+        }
+    }
+
+    private void executeSql(DataSource dataSource, List<String> sqls) throws Exception {
+        if (sqls.isEmpty()) {
+            return;
+        }
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            for (String sql : sqls) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    private void executeStatements(String name, List<String> statementIds) {
+        if (statementIds.isEmpty()) {
+            return;
+        }
+        SqlSessionFactory sqlSessionFactory = multiDataSourceHolder.getSqlSessionFactories().get(name + "SqlSessionFactory");
+        if (sqlSessionFactory == null) {
+            throw new IllegalStateException("No SqlSessionFactory to run the warm-up statements of " + name);
+        }
+        try (SqlSession session = sqlSessionFactory.openSession()) {
+            for (String statementId : statementIds) {
+                session.selectList(statementId);
+            }
+        }
+    }
+}
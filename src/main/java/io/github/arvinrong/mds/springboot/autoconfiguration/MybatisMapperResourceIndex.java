@@ -0,0 +1,121 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the mapper files built with a single classpath scan.
+ */
+class MybatisMapperResourceIndex {
+    private static final Log logger = LogFactory.getLog(MybatisMapperResourceIndex.class);
+    static final String DEFAULT_MAPPER_ROOT = "mybatis/mapper/";
+    private static final String DEFAULT_LOCATION_PREFIX = "classpath:" + DEFAULT_MAPPER_ROOT;
+    private static final String DEFAULT_LOCATION_SUFFIX = "/*.xml";
+
+    private final ResourcePatternResolver resourceResolver;
+    private final Map<String, Resource[]> defaultLocations = new HashMap<>();
+    private final Map<String, Resource[]> resolvedLocations = new ConcurrentHashMap<>();
+
+    MybatisMapperResourceIndex(ResourceLoader resourceLoader) {
+        this.resourceResolver = resourceLoader != null ? new PathMatchingResourcePatternResolver(resourceLoader)
+                : new PathMatchingResourcePatternResolver();
+        index();
+    }
+
+    static String defaultLocation(String directory) {
+        return DEFAULT_LOCATION_PREFIX + directory + DEFAULT_LOCATION_SUFFIX;
+    }
+
+    /**
+     * Keeps the semantics of a "classpath:" location, the first root containing a directory wins.
+     */
+    private void index() {
+        Map<String, String> directoryRoots = new HashMap<>();
+        Map<String, List<Resource>> directories = new HashMap<>();
+        try {
+            for (Resource resource : resourceResolver.getResources("classpath*:" + DEFAULT_MAPPER_ROOT + "*/*.xml")) {
+                String url = resource.getURL().toString();
+                int rootEnd = url.lastIndexOf(DEFAULT_MAPPER_ROOT);
+                String relativePath = url.substring(rootEnd + DEFAULT_MAPPER_ROOT.length());
+                String directory = relativePath.substring(0, relativePath.indexOf('/'));
+                String root = url.substring(0, rootEnd);
+                String indexedRoot = directoryRoots.get(directory);
+                if (indexedRoot == null) {
+                    directoryRoots.put(directory, root);
+                } else if (!indexedRoot.equals(root)) {
+                    continue;
+                }
+                List<Resource> resources = directories.get(directory);
+                if (resources == null) {
+                    resources = new ArrayList<>();
+                    directories.put(directory, resources);
+                }
+                resources.add(resource);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to index mybatis mapper files under " + DEFAULT_MAPPER_ROOT, e);
+        }
+        for (Map.Entry<String, List<Resource>> entry : directories.entrySet()) {
+            defaultLocations.put(defaultLocation(entry.getKey()), entry.getValue().toArray(new Resource[entry.getValue().size()]));
+        }
+    }
+
+    Resource[] getResources(List<String> mapperLocations) {
+        List<Resource> resources = new ArrayList<Resource>();
+        if (mapperLocations != null) {
+            for (String mapperLocation : mapperLocations) {
+                resources.addAll(Arrays.asList(getResources(mapperLocation)));
+            }
+        }
+        return resources.toArray(new Resource[resources.size()]);
+    }
+
+    private Resource[] getResources(String mapperLocation) {
+        if (isDefaultLocation(mapperLocation)) {
+            Resource[] resources = defaultLocations.get(mapperLocation);
+            return resources != null ? resources : new Resource[0];
+        }
+        Resource[] resources = resolvedLocations.get(mapperLocation);
+        if (resources == null) {
+            try {
+                resources = resourceResolver.getResources(mapperLocation);
+            } catch (IOException e) {
+                // ignore
+                resources = new Resource[0];
+            }
+            resolvedLocations.put(mapperLocation, resources);
+        }
+        return resources;
+    }
+
+    private boolean isDefaultLocation(String mapperLocation) {
+        if (!mapperLocation.startsWith(DEFAULT_LOCATION_PREFIX) || !mapperLocation.endsWith(DEFAULT_LOCATION_SUFFIX)) {
+            return false;
+        }
+        String directory = mapperLocation.substring(DEFAULT_LOCATION_PREFIX.length(), mapperLocation.length() - DEFAULT_LOCATION_SUFFIX.length());
+        return directory.length() > 0 && directory.indexOf('/') < 0 && directory.indexOf('*') < 0 && directory.indexOf('?') < 0;
+    }
+}
@@ -15,33 +15,54 @@
  */
 package io.github.arvinrong.mds.springboot.autoconfiguration;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.executor.keygen.SelectKeyGenerator;
 import org.apache.ibatis.mapping.DatabaseIdProvider;
+import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.io.VFS;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.MyBatisExceptionTranslator;
 import org.mybatis.spring.SqlSessionFactoryBean;
 import org.mybatis.spring.SqlSessionTemplate;
 import org.mybatis.spring.boot.autoconfigure.ConfigurationCustomizer;
 import org.mybatis.spring.boot.autoconfigure.MybatisProperties;
 import org.mybatis.spring.boot.autoconfigure.SpringBootVFS;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.MutablePropertyValues;
 import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.bind.RelaxedDataBinder;
 import org.springframework.context.ResourceLoaderAware;
+import org.springframework.core.convert.support.DefaultConversionService;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
-import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
-import org.springframework.core.io.support.ResourcePatternResolver;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.ObjectUtils;
+import org.springframework.util.ReflectionUtils;
 import org.springframework.util.StringUtils;
 
 import javax.annotation.PostConstruct;
 import javax.sql.DataSource;
-import java.io.IOException;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
-public class MybatisMultiDataSourceInitializer implements ResourceLoaderAware {
+public class MybatisMultiDataSourceInitializer implements ResourceLoaderAware, DisposableBean {
+    private static final Log logger = LogFactory.getLog(MybatisMultiDataSourceInitializer.class);
+    // Settings of the global configuration which are state of that configuration, not settings to copy.
+    private static final Set<String> UNSHARED_SETTINGS = new HashSet<>(Arrays.asList("environment", "variables"));
     private Boolean initialized = false;
     private MultiDataSourceHolder multiDataSourceHolder;
     private BeanFactory beanFactory;
@@ -50,6 +71,12 @@ public class MybatisMultiDataSourceInitializer implements ResourceLoaderAware {
     private Interceptor[] interceptors;
     private DatabaseIdProvider databaseIdProvider;
     private List<ConfigurationCustomizer> configurationCustomizers;
+    private MybatisMapperResourceIndex mapperResourceIndex;
+    private final Map<String, StatementMetrics> statementMetrics = new ConcurrentHashMap<>();
+    private final Map<String, List<MultiDataSourceCache>> caches = new ConcurrentHashMap<>();
+    private ScheduledExecutorService batchFlushScheduler;
+    private Map<String, Object> globalSettings;
+    private final MultiDataSourceStartupTimeline startupTimeline;
 
     public MybatisMultiDataSourceInitializer(ObjectProvider<Interceptor[]> interceptorsProvider,
                                              ObjectProvider<DatabaseIdProvider> databaseIdProvider,
@@ -60,6 +87,7 @@ public class MybatisMultiDataSourceInitializer implements ResourceLoaderAware {
         this.multiDataSourceHolder = multiDataSourceHolder;
         this.beanFactory = beanFactory;
         this.properties = properties;
+        this.startupTimeline = MultiDataSourceStartupTimeline.of(beanFactory);
     }
 
     @PostConstruct
@@ -67,50 +95,361 @@ public class MybatisMultiDataSourceInitializer implements ResourceLoaderAware {
         if (initialized) {
             return;
         }
-        Set<String> multiDataSourceHolderKeySet = multiDataSourceHolder.getMultiDataSources().keySet();
-        Iterator<String> multiDataSourceHolderKeySetItr = multiDataSourceHolderKeySet.iterator();
-        while (multiDataSourceHolderKeySetItr.hasNext()) {
-            String dataSourceKey = multiDataSourceHolderKeySetItr.next();
+        MultiDataSourceStartupTimeline.Step step = startupTimeline.start(null, "initialize mybatis");
+        try {
+            initMybatis();
+        } finally {
+            step.close();
+        }
+    }
+
+    private void initMybatis() {
+        // Registered once up front instead of through every SqlSessionFactoryBean, VFS keeps the
+        // implementations in a static list which is not safe to append to from several threads.
+        VFS.addImplClass(SpringBootVFS.class);
+        this.mapperResourceIndex = new MybatisMapperResourceIndex(this.resourceLoader);
+        List<String> dataSourceNames = getDataSourceNames();
+        MultiDataSourceProperties multiDataSourceProperties = multiDataSourceHolder.getProperties();
+        int threads = multiDataSourceProperties.isParallelInitialization() ? multiDataSourceProperties.getInitializationThreads() : 1;
+        // The first datasource of a mapper group parses the mapper files, the rest of the group reuses its statements.
+        // Statements read the settings of the configuration they were parsed with, so only members with the same Mybatis overrides share.
+        Map<String, String> mapperGroupLeaders = new HashMap<>();
+        List<String> parsingDataSourceNames = new ArrayList<>();
+        List<String> sharingDataSourceNames = new ArrayList<>();
+        List<String> lazyDataSourceNames = new ArrayList<>();
+        for (String dataSourceKey : dataSourceNames) {
+            String mapperGroup = getMapperGroup(dataSourceKey);
+            if (isLazy(dataSourceKey)) {
+                lazyDataSourceNames.add(dataSourceKey);
+            } else if (mapperGroup == null || !mapperGroupLeaders.containsKey(getMapperGroupKey(dataSourceKey))) {
+                if (mapperGroup != null) {
+                    mapperGroupLeaders.put(getMapperGroupKey(dataSourceKey), dataSourceKey);
+                }
+                parsingDataSourceNames.add(dataSourceKey);
+            } else {
+                sharingDataSourceNames.add(dataSourceKey);
+            }
+        }
+        Map<String, SqlSessionFactory> sqlSessionFactories = new HashMap<>();
+        sqlSessionFactories.putAll(MultiDataSourceTasks.runAll("parse mybatis mappers", parsingDataSourceNames, threads,
+                dataSourceKey -> sqlSessionFactory(dataSourceKey, multiDataSourceHolder.getMultiDataSources().get(dataSourceKey),
+                        getMapperLocations(dataSourceKey))));
+        sqlSessionFactories.putAll(MultiDataSourceTasks.runAll("share mybatis mappers", sharingDataSourceNames, threads, dataSourceKey -> {
+            DataSource dataSource = multiDataSourceHolder.getMultiDataSources().get(dataSourceKey);
+            String mapperGroup = getMapperGroup(dataSourceKey);
+            Configuration leaderConfiguration = sqlSessionFactories.get(mapperGroupLeaders.get(getMapperGroupKey(dataSourceKey))).getConfiguration();
+            if (!leaderConfiguration.getCacheNames().isEmpty()) {
+                // Second level caches hang off the mapped statements, sharing them would mix up the rows of different databases.
+                logger.warn("Mapper group " + mapperGroup + " declares second level caches, mappers of " + dataSourceKey + " are parsed separately.");
+                return sqlSessionFactory(dataSourceKey, dataSource, getMapperLocations(dataSourceKey));
+            }
+            SqlSessionFactory sqlSessionFactory = sqlSessionFactory(dataSourceKey, dataSource, null);
+            shareMappedStatements(leaderConfiguration, sqlSessionFactory.getConfiguration());
+            return sqlSessionFactory;
+        }));
+        for (String dataSourceKey : lazyDataSourceNames) {
             DataSource dataSource = multiDataSourceHolder.getMultiDataSources().get(dataSourceKey);
+            sqlSessionFactories.put(dataSourceKey, new LazyInitializingSqlSessionFactory(dataSourceKey,
+                    () -> sqlSessionFactory(dataSourceKey, dataSource, getMapperLocations(dataSourceKey))));
+        }
+        for (String dataSourceKey : dataSourceNames) {
             try {
-                SqlSessionFactory sqlSessionFactory = sqlSessionFactory(dataSource, new String[]{"classpath:mybatis/mapper/" + dataSourceKey + "/*.xml"});
-                SqlSessionTemplate sqlSessionTemplate = sqlSessionTemplate(sqlSessionFactory);
+                SqlSessionFactory sqlSessionFactory = sqlSessionFactories.get(dataSourceKey);
+                SqlSessionTemplate sqlSessionTemplate = sqlSessionTemplate(dataSourceKey, sqlSessionFactory, multiDataSourceHolder.getMultiDataSources().get(dataSourceKey));
                 String sqlSessionTemplateBeanName = dataSourceKey + "SqlSessionTemplate";
                 String sqlSessionFactoryBeanName = dataSourceKey + "SqlSessionFactory";
                 multiDataSourceHolder.addSqlSessionFactory(sqlSessionFactoryBeanName, sqlSessionFactory);
                 beanFactory.getBean(sqlSessionFactoryBeanName);
                 multiDataSourceHolder.addSqlSessionTemplate(sqlSessionTemplateBeanName, sqlSessionTemplate);
                 beanFactory.getBean(sqlSessionTemplateBeanName);
+                registerBatchSqlWriter(dataSourceKey, sqlSessionFactory);
+                registerStreamingSqlReader(dataSourceKey, sqlSessionTemplate);
             } catch (Exception e) {
-                throw new IllegalStateException("Mybatis for multi datasource failed to be initialized", e);
+                throw new IllegalStateException("Mybatis for multi datasource failed to be initialized: " + dataSourceKey, e);
             }
         }
         initialized = true;
     }
 
-    private SqlSessionFactory sqlSessionFactory(DataSource dataSource, String[] mapperLocations) throws Exception {
-        Configuration configuration = new Configuration();
-        if (configuration == null && !StringUtils.hasText(this.properties.getConfigLocation())) {
-            configuration = new Configuration();
+    private MultiDataSourceProperties.CustomDataSource getCustomDataSource(String dataSourceKey) {
+        return multiDataSourceHolder.getCustomDataSources().get(dataSourceKey);
+    }
+
+    /**
+     * Builds the SqlSessionFactory of a datasource added after startup.
+     */
+    SqlSessionFactory createSqlSessionFactory(String dataSourceKey, DataSource dataSource) throws Exception {
+        if (isLazy(dataSourceKey)) {
+            return new LazyInitializingSqlSessionFactory(dataSourceKey, () -> sqlSessionFactory(dataSourceKey, dataSource, getMapperLocations(dataSourceKey)));
+        }
+        Configuration leaderConfiguration = getMapperGroup(dataSourceKey) != null ? getMapperGroupConfiguration(dataSourceKey) : null;
+        if (leaderConfiguration == null || !leaderConfiguration.getCacheNames().isEmpty()) {
+            return sqlSessionFactory(dataSourceKey, dataSource, getMapperLocations(dataSourceKey));
+        }
+        SqlSessionFactory sqlSessionFactory = sqlSessionFactory(dataSourceKey, dataSource, null);
+        shareMappedStatements(leaderConfiguration, sqlSessionFactory.getConfiguration());
+        return sqlSessionFactory;
+    }
+
+    SqlSessionTemplate createSqlSessionTemplate(String dataSourceKey, SqlSessionFactory sqlSessionFactory, DataSource dataSource) {
+        return sqlSessionTemplate(dataSourceKey, sqlSessionFactory, dataSource);
+    }
+
+    /**
+     * Registers "{name}BatchSqlWriter" for a datasource using the BATCH executor.
+     */
+    void registerBatchSqlWriter(String dataSourceKey, SqlSessionFactory sqlSessionFactory) {
+        if (executorType(dataSourceKey) != ExecutorType.BATCH) {
+            return;
+        }
+        MultiDataSourceProperties.CustomDataSource customDataSource = getCustomDataSource(dataSourceKey);
+        BatchSqlWriter batchSqlWriter = new BatchSqlWriter(dataSourceKey, sqlSessionFactory, customDataSource.getBatchSize(),
+                customDataSource.getBatchFlushInterval(), getBatchFlushScheduler());
+        String beanName = dataSourceKey + BatchSqlWriter.BEAN_NAME_SUFFIX;
+        DefaultListableBeanFactory registry = (DefaultListableBeanFactory) beanFactory;
+        registry.registerSingleton(beanName, batchSqlWriter);
+        registry.registerDisposableBean(beanName, batchSqlWriter);
+    }
+
+    /**
+     * Registers "{name}StreamingSqlReader" for a datasource, read/write groups take the default fetch size.
+     */
+    void registerStreamingSqlReader(String dataSourceKey, SqlSessionTemplate sqlSessionTemplate) {
+        MultiDataSourceProperties.CustomDataSource customDataSource = getCustomDataSource(dataSourceKey);
+        StreamingSqlReader streamingSqlReader = new StreamingSqlReader(dataSourceKey, sqlSessionTemplate,
+                customDataSource != null ? customDataSource.getStreamFetchSize() : StreamingSqlReader.DEFAULT_FETCH_SIZE);
+        ((DefaultListableBeanFactory) beanFactory).registerSingleton(dataSourceKey + StreamingSqlReader.BEAN_NAME_SUFFIX, streamingSqlReader);
+    }
+
+    private synchronized ScheduledExecutorService getBatchFlushScheduler() {
+        if (batchFlushScheduler == null) {
+            batchFlushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "multi-ds-batch-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return batchFlushScheduler;
+    }
+
+    /**
+     * The executor type of the datasource if it declares one, "mybatis.executor-type" otherwise.
+     */
+    private ExecutorType executorType(String dataSourceKey) {
+        MultiDataSourceProperties.CustomDataSource customDataSource = getCustomDataSource(dataSourceKey);
+        if (customDataSource != null && StringUtils.hasText(customDataSource.getExecutorType())) {
+            return ExecutorType.valueOf(customDataSource.getExecutorType().trim().toUpperCase(Locale.ENGLISH));
+        }
+        return this.properties.getExecutorType();
+    }
+
+    private Configuration getMapperGroupConfiguration(String memberDataSourceKey) {
+        String mapperGroupKey = getMapperGroupKey(memberDataSourceKey);
+        for (String dataSourceKey : getDataSourceNames()) {
+            if (!dataSourceKey.equals(memberDataSourceKey) && mapperGroupKey.equals(getMapperGroupKey(dataSourceKey))) {
+                SqlSessionFactory sqlSessionFactory = multiDataSourceHolder.getSqlSessionFactories().get(dataSourceKey + "SqlSessionFactory");
+                if (sqlSessionFactory != null && !(sqlSessionFactory instanceof LazyInitializingSqlSessionFactory)) {
+                    return sqlSessionFactory.getConfiguration();
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isLazy(String dataSourceKey) {
+        MultiDataSourceProperties.CustomDataSource customDataSource = getCustomDataSource(dataSourceKey);
+        return customDataSource != null && customDataSource.isLazy();
+    }
+
+    private String getMapperGroup(String dataSourceKey) {
+        MultiDataSourceProperties.CustomDataSource customDataSource = getCustomDataSource(dataSourceKey);
+        return customDataSource != null && StringUtils.hasText(customDataSource.getMapperGroup()) ? customDataSource.getMapperGroup() : null;
+    }
+
+    /**
+     * The mapper group followed by the Mybatis overrides of the datasource, {@code null} without a mapper group.
+     */
+    private String getMapperGroupKey(String dataSourceKey) {
+        String mapperGroup = getMapperGroup(dataSourceKey);
+        if (mapperGroup == null) {
+            return null;
+        }
+        MultiDataSourceProperties.Mybatis mybatis = getCustomDataSource(dataSourceKey).getMybatis();
+        Map<String, String> configuration = new TreeMap<>();
+        for (Map.Entry<String, String> entry : mybatis.getConfiguration().entrySet()) {
+            configuration.put(MultiDataSourcePropertyIndex.normalize(entry.getKey()), entry.getValue());
+        }
+        return mapperGroup + configuration + new TreeMap<>(mybatis.getConfigurationProperties());
+    }
+
+    /**
+     * Explicit mapper locations of the datasource, otherwise the directory of its name or mapper group.
+     */
+    private List<String> getMapperLocations(String dataSourceKey) {
+        MultiDataSourceProperties.CustomDataSource customDataSource = getCustomDataSource(dataSourceKey);
+        if (customDataSource != null && !CollectionUtils.isEmpty(customDataSource.getMapperLocations())) {
+            return customDataSource.getMapperLocations();
+        }
+        String mapperGroup = getMapperGroup(dataSourceKey);
+        return Collections.singletonList(MybatisMapperResourceIndex.defaultLocation(mapperGroup != null ? mapperGroup : dataSourceKey));
+    }
+
+    /**
+     * Copies the parsed statements of the group leader into a configuration built without mapper locations.
+     */
+    private void shareMappedStatements(Configuration source, Configuration target) {
+        // Short names are registered by the StrictMaps themselves, copying full ids only avoids ambiguity markers.
+        for (String id : source.getResultMapNames()) {
+            if (id.indexOf('.') > 0 && !target.hasResultMap(id)) {
+                target.addResultMap(source.getResultMap(id));
+            }
+        }
+        for (String id : source.getParameterMapNames()) {
+            if (id.indexOf('.') > 0 && !target.hasParameterMap(id)) {
+                target.addParameterMap(source.getParameterMap(id));
+            }
+        }
+        // Select keys first, the statements using them look up the rebuilt generators.
+        for (String id : source.getKeyGeneratorNames()) {
+            if (id.indexOf('.') > 0 && !target.hasKeyGenerator(id)) {
+                KeyGenerator keyGenerator = source.getKeyGenerator(id);
+                if (keyGenerator instanceof SelectKeyGenerator) {
+                    MappedStatement keyStatement = rebuildMappedStatement(source.getMappedStatement(id, false), target);
+                    target.addMappedStatement(keyStatement);
+                    keyGenerator = new SelectKeyGenerator(keyStatement, isExecuteBefore((SelectKeyGenerator) keyGenerator));
+                }
+                target.addKeyGenerator(id, keyGenerator);
+            }
+        }
+        for (String id : source.getMappedStatementNames()) {
+            if (id.indexOf('.') > 0 && !target.hasStatement(id, false)) {
+                target.addMappedStatement(rebuildMappedStatement(source.getMappedStatement(id, false), target));
+            }
+        }
+        for (Class<?> mapper : source.getMapperRegistry().getMappers()) {
+            if (!target.hasMapper(mapper)) {
+                // Marking the resources as loaded keeps the annotation builder from parsing the mapper again.
+                target.addLoadedResource(mapper.toString());
+                target.addLoadedResource("namespace:" + mapper.getName());
+                target.addMapper(mapper);
+            }
+        }
+    }
+
+    /**
+     * The SqlSource stays shared, it only reads type handlers and settings, which members of a group have in common.
+     */
+    private static MappedStatement rebuildMappedStatement(MappedStatement statement, Configuration target) {
+        KeyGenerator keyGenerator = statement.getKeyGenerator();
+        if (keyGenerator instanceof SelectKeyGenerator) {
+            keyGenerator = target.getKeyGenerator(statement.getId() + SelectKeyGenerator.SELECT_KEY_SUFFIX);
+        }
+        return new MappedStatement.Builder(target, statement.getId(), statement.getSqlSource(), statement.getSqlCommandType())
+                .resource(statement.getResource())
+                .fetchSize(statement.getFetchSize())
+                .timeout(statement.getTimeout())
+                .statementType(statement.getStatementType())
+                .resultSetType(statement.getResultSetType())
+                .parameterMap(statement.getParameterMap())
+                .resultMaps(statement.getResultMaps())
+                .cache(statement.getCache())
+                .flushCacheRequired(statement.isFlushCacheRequired())
+                .useCache(statement.isUseCache())
+                .resultOrdered(statement.isResultOrdered())
+                .keyGenerator(keyGenerator)
+                .keyProperty(delimited(statement.getKeyProperties()))
+                .keyColumn(delimited(statement.getKeyColumns()))
+                .databaseId(statement.getDatabaseId())
+                .lang(statement.getLang())
+                .resultSets(delimited(statement.getResultSets()))
+                .build();
+    }
+
+    private static String delimited(String[] values) {
+        return values != null ? StringUtils.arrayToCommaDelimitedString(values) : null;
+    }
+
+    private static boolean isExecuteBefore(SelectKeyGenerator keyGenerator) {
+        Field field = ReflectionUtils.findField(SelectKeyGenerator.class, "executeBefore");
+        ReflectionUtils.makeAccessible(field);
+        return (Boolean) ReflectionUtils.getField(field, keyGenerator);
+    }
+
+    /**
+     * Names of the registered datasources in declaration order.
+     */
+    private List<String> getDataSourceNames() {
+        List<String> names = new ArrayList<>();
+        Set<String> registered = new LinkedHashSet<>(multiDataSourceHolder.getMultiDataSources().keySet());
+        for (MultiDataSourceProperties.CustomDataSource customDataSource : multiDataSourceHolder.getProperties().getDataSources()) {
+            if (registered.contains(customDataSource.getName()) && !names.contains(customDataSource.getName())) {
+                names.add(customDataSource.getName());
+            }
+        }
+        for (String name : registered) {
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    private SqlSessionFactory sqlSessionFactory(String dataSourceKey, DataSource dataSource, List<String> mapperLocations) throws Exception {
+        MultiDataSourceStartupTimeline.Step step = startupTimeline.start(dataSourceKey,
+                mapperLocations != null ? "parse mappers" : "create SqlSessionFactory");
+        try {
+            return buildSqlSessionFactory(dataSourceKey, dataSource, mapperLocations);
+        } finally {
+            step.close();
+        }
+    }
+
+    private SqlSessionFactory buildSqlSessionFactory(String dataSourceKey, DataSource dataSource, List<String> mapperLocations) throws Exception {
+        MultiDataSourceProperties.CustomDataSource customDataSource = getCustomDataSource(dataSourceKey);
+        MultiDataSourceProperties.Cache cache = customDataSource != null && customDataSource.getCache().isEnabled() ? customDataSource.getCache() : null;
+        MultiDataSourceProperties.Mybatis mybatis = customDataSource != null ? customDataSource.getMybatis() : null;
+        Configuration configuration = null;
+        if (!StringUtils.hasText(this.properties.getConfigLocation())) {
+            // Every datasource gets a configuration of its own, the global settings are copied over.
+            configuration = cache != null ? new MultiDataSourceCache.CachingConfiguration() : new Configuration();
+            copyGlobalSettings(configuration);
         }
         if (configuration != null && !CollectionUtils.isEmpty(this.configurationCustomizers)) {
             for (ConfigurationCustomizer customizer : this.configurationCustomizers) {
                 customizer.customize(configuration);
             }
         }
+        if (configuration != null && mybatis != null) {
+            bindMybatisSettings(dataSourceKey, configuration, mybatis);
+        }
         SqlSessionFactoryBean factory = new SqlSessionFactoryBean();
         factory.setDataSource(dataSource);
-        factory.setVfs(SpringBootVFS.class);
         if (StringUtils.hasText(this.properties.getConfigLocation())) {
             factory.setConfigLocation(this.resourceLoader.getResource(this.properties.getConfigLocation()));
+        } else {
+            factory.setConfiguration(configuration);
         }
-        factory.setConfiguration(configuration);
+        Properties configurationProperties = new Properties();
         if (this.properties.getConfigurationProperties() != null) {
-            factory.setConfigurationProperties(this.properties.getConfigurationProperties());
+            configurationProperties.putAll(this.properties.getConfigurationProperties());
+        }
+        if (mybatis != null) {
+            configurationProperties.putAll(mybatis.getConfigurationProperties());
+        }
+        if (!configurationProperties.isEmpty()) {
+            factory.setConfigurationProperties(configurationProperties);
         }
+        StatementMetricsInterceptor statementMetricsInterceptor = statementMetricsInterceptor(dataSourceKey);
+        List<Interceptor> plugins = new ArrayList<>();
         if (!ObjectUtils.isEmpty(this.interceptors)) {
-            factory.setPlugins(this.interceptors);
+            plugins.addAll(Arrays.asList(this.interceptors));
         }
+        // Wraps the statement handlers outermost, so the fetch size is set after the other plugins prepared the statement.
+        plugins.add(StreamingFetchSizeInterceptor.INSTANCE);
+        if (statementMetricsInterceptor != null) {
+            plugins.add(statementMetricsInterceptor);
+        }
+        factory.setPlugins(plugins.toArray(new Interceptor[plugins.size()]));
         if (this.databaseIdProvider != null) {
             factory.setDatabaseIdProvider(this.databaseIdProvider);
         }
@@ -120,29 +459,141 @@ public class MybatisMultiDataSourceInitializer implements ResourceLoaderAware {
         if (StringUtils.hasLength(this.properties.getTypeHandlersPackage())) {
             factory.setTypeHandlersPackage(this.properties.getTypeHandlersPackage());
         }
-            factory.setMapperLocations(resolveMapperLocations(mapperLocations));
+        Resource[] mappers = mapperResourceIndex.getResources(mapperLocations);
+        factory.setMapperLocations(mappers);
+
+        SqlSessionFactory sqlSessionFactory;
+        if (cache != null) {
+            List<MultiDataSourceCache> created = new ArrayList<>();
+            sqlSessionFactory = MultiDataSourceCache.build(dataSourceKey, cache, mappers, created, factory::getObject);
+            registerCaches(dataSourceKey, created);
+        } else {
+            sqlSessionFactory = factory.getObject();
+        }
+        if (configuration == null && mybatis != null) {
+            // Parsed from the config location, settings read while parsing the mappers keep the values of the file.
+            bindMybatisSettings(dataSourceKey, sqlSessionFactory.getConfiguration(), mybatis);
+        }
+        return sqlSessionFactory;
+    }
 
-        return factory.getObject();
+    /**
+     * Copies the settings of "mybatis.configuration" differing from the Mybatis defaults.
+     */
+    private void copyGlobalSettings(Configuration configuration) {
+        Map<String, Object> globalSettings = getGlobalSettings();
+        if (!globalSettings.isEmpty()) {
+            new BeanWrapperImpl(configuration).setPropertyValues(globalSettings);
+        }
+        // The factory adds the configuration properties of the datasource to the variables, they must not be shared.
+        Configuration global = this.properties.getConfiguration();
+        if (global != null) {
+            configuration.getVariables().putAll(global.getVariables());
+        }
     }
 
-    private Resource[] resolveMapperLocations(String[] mapperLocations) {
-        ResourcePatternResolver resourceResolver = new PathMatchingResourcePatternResolver();
-        List<Resource> resources = new ArrayList<Resource>();
-        if (mapperLocations != null) {
-            for (String mapperLocation : mapperLocations) {
-                try {
-                    Resource[] mappers = resourceResolver.getResources(mapperLocation);
-                    resources.addAll(Arrays.asList(mappers));
-                } catch (IOException e) {
-                    // ignore
+    private synchronized Map<String, Object> getGlobalSettings() {
+        if (globalSettings == null) {
+            globalSettings = new HashMap<>();
+            Configuration global = this.properties.getConfiguration();
+            if (global != null) {
+                BeanWrapper globalWrapper = new BeanWrapperImpl(global);
+                BeanWrapper defaultWrapper = new BeanWrapperImpl(new Configuration());
+                for (PropertyDescriptor descriptor : globalWrapper.getPropertyDescriptors()) {
+                    String name = descriptor.getName();
+                    if (globalWrapper.isReadableProperty(name) && globalWrapper.isWritableProperty(name) && !UNSHARED_SETTINGS.contains(name)) {
+                        Object value = globalWrapper.getPropertyValue(name);
+                        if (!ObjectUtils.nullSafeEquals(value, defaultWrapper.getPropertyValue(name))) {
+                            globalSettings.put(name, value);
+                        }
+                    }
                 }
             }
         }
-        return resources.toArray(new Resource[resources.size()]);
+        return globalSettings;
+    }
+
+    private static void bindMybatisSettings(String dataSourceKey, Configuration configuration, MultiDataSourceProperties.Mybatis mybatis) {
+        if (mybatis.getConfiguration().isEmpty()) {
+            return;
+        }
+        RelaxedDataBinder binder = new RelaxedDataBinder(configuration);
+        binder.setConversionService(DefaultConversionService.getSharedInstance());
+        binder.setIgnoreUnknownFields(false);
+        binder.bind(new MutablePropertyValues(mybatis.getConfiguration()));
+        if (binder.getBindingResult().hasErrors()) {
+            throw new IllegalStateException("============ Failed to apply the mybatis settings of DataSource: " + dataSourceKey
+                    + ", " + binder.getBindingResult().getAllErrors());
+        }
+    }
+
+    /**
+     * Added last, so it wraps the executor outermost and measures the time spent in the other plugins too.
+     */
+    private StatementMetricsInterceptor statementMetricsInterceptor(String dataSourceKey) {
+        MultiDataSourceProperties.Metrics metrics = multiDataSourceHolder.getProperties().getMetrics();
+        if (!metrics.isStatementsEnabled()) {
+            return null;
+        }
+        StatementMetrics created = new StatementMetrics(dataSourceKey, metrics.getSlowStatementThreshold(), metrics.getSlowStatementSamples());
+        StatementMetrics existing = statementMetrics.putIfAbsent(dataSourceKey, created);
+        if (existing == null && metrics.isJmxEnabled()) {
+            MultiDataSourceMetrics.registerMBean(ManagementFactory.getPlatformMBeanServer(), created, "StatementMetrics", dataSourceKey);
+        }
+        return new StatementMetricsInterceptor(existing != null ? existing : created);
+    }
+
+    /**
+     * @return statement latencies of the datasource, {@code null} unless "system.db.metrics.statements-enabled" is set
+     */
+    public StatementMetrics getStatementMetrics(String dataSourceName) {
+        return statementMetrics.get(dataSourceName);
+    }
+
+    private void registerCaches(String dataSourceName, List<MultiDataSourceCache> created) {
+        unregisterCaches(dataSourceName);
+        caches.put(dataSourceName, Collections.unmodifiableList(created));
+        if (multiDataSourceHolder.getProperties().getMetrics().isJmxEnabled()) {
+            for (MultiDataSourceCache cache : created) {
+                MultiDataSourceMetrics.registerMBean(ManagementFactory.getPlatformMBeanServer(), cache, "MapperCache", dataSourceName + "/" + cache.getId());
+            }
+        }
     }
 
-    private SqlSessionTemplate sqlSessionTemplate(SqlSessionFactory sqlSessionFactory) {
-        ExecutorType executorType = this.properties.getExecutorType();
+    private void unregisterCaches(String dataSourceName) {
+        List<MultiDataSourceCache> removed = caches.remove(dataSourceName);
+        if (removed != null && multiDataSourceHolder.getProperties().getMetrics().isJmxEnabled()) {
+            for (MultiDataSourceCache cache : removed) {
+                MultiDataSourceMetrics.unregisterMBean(ManagementFactory.getPlatformMBeanServer(), "MapperCache", dataSourceName + "/" + cache.getId());
+            }
+        }
+    }
+
+    /**
+     * @return the second level caches of the datasource, empty unless its "cache.enabled" is set and its mappers are parsed
+     */
+    public List<MultiDataSourceCache> getCaches(String dataSourceName) {
+        List<MultiDataSourceCache> dataSourceCaches = caches.get(dataSourceName);
+        return dataSourceCaches != null ? dataSourceCaches : Collections.emptyList();
+    }
+
+    /**
+     * Drops what was kept for a datasource removed at runtime.
+     */
+    void removeDataSource(String dataSourceName) {
+        if (statementMetrics.remove(dataSourceName) != null && multiDataSourceHolder.getProperties().getMetrics().isJmxEnabled()) {
+            MultiDataSourceMetrics.unregisterMBean(ManagementFactory.getPlatformMBeanServer(), "StatementMetrics", dataSourceName);
+        }
+        unregisterCaches(dataSourceName);
+    }
+
+    private SqlSessionTemplate sqlSessionTemplate(String dataSourceKey, SqlSessionFactory sqlSessionFactory, DataSource dataSource) {
+        ExecutorType executorType = executorType(dataSourceKey);
+        if (sqlSessionFactory instanceof LazyInitializingSqlSessionFactory) {
+            // The other constructors read the Configuration, which would parse the mappers right away.
+            return new SqlSessionTemplate(sqlSessionFactory, executorType != null ? executorType : ExecutorType.SIMPLE,
+                    new MyBatisExceptionTranslator(dataSource, true));
+        }
         if (executorType != null) {
             return new SqlSessionTemplate(sqlSessionFactory, executorType);
         } else {
@@ -150,6 +601,20 @@ public class MybatisMultiDataSourceInitializer implements ResourceLoaderAware {
         }
     }
 
+    @Override
+    public void destroy() {
+        Set<String> dataSourceNames = new HashSet<>(statementMetrics.keySet());
+        dataSourceNames.addAll(caches.keySet());
+        for (String dataSourceName : dataSourceNames) {
+            removeDataSource(dataSourceName);
+        }
+        synchronized (this) {
+            if (batchFlushScheduler != null) {
+                batchFlushScheduler.shutdown();
+            }
+        }
+    }
+
     @Override
     public void setResourceLoader(ResourceLoader resourceLoader) {
         this.resourceLoader = resourceLoader;
@@ -26,7 +26,6 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 
@@ -78,14 +77,11 @@ public class MybatisObjectPostProcessor implements BeanPostProcessor, BeanFactor
     @Override
     public void afterPropertiesSet() throws Exception {
         MultiDataSourceProperties properties = beanFactory.getBean(MultiDataSourceProperties.class);
-        List<MultiDataSourceProperties.CustomDataSource> multiDataSourcePropertiesMap = properties.getDataSources();
-        Iterator<MultiDataSourceProperties.CustomDataSource> iterator = multiDataSourcePropertiesMap.iterator();
-        while (iterator.hasNext()) {
-            MultiDataSourceProperties.CustomDataSource customDataSource = iterator.next();
-            multiDataSourceBeanNameList.add(customDataSource.getName());
-            multiDataSourcePlatformTransactionManagerList.add(customDataSource.getName() + MultiDataSourceTransactionManagerAutoConfiguration.TRANSACTION_MGR_MAPPER_KEY_SUFFIX);
-            mybatisSqlSessionTemplateList.add(customDataSource.getName() + "SqlSessionTemplate");
-            mybatisSqlSessionFactoryList.add(customDataSource.getName() + "SqlSessionFactory");
+        for (String dataSourceName : properties.determineDataSourceNames()) {
+            multiDataSourceBeanNameList.add(dataSourceName);
+            multiDataSourcePlatformTransactionManagerList.add(dataSourceName + MultiDataSourceTransactionManagerAutoConfiguration.TRANSACTION_MGR_MAPPER_KEY_SUFFIX);
+            mybatisSqlSessionTemplateList.add(dataSourceName + "SqlSessionTemplate");
+            mybatisSqlSessionFactoryList.add(dataSourceName + "SqlSessionFactory");
         }
     }
 }
@@ -0,0 +1,386 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.MetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.tomcat.jdbc.pool.ConnectionPool;
+import org.apache.tomcat.jdbc.pool.JdbcInterceptor;
+import org.apache.tomcat.jdbc.pool.PoolConfiguration;
+import org.apache.tomcat.jdbc.pool.PooledConnection;
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live connection counts of a custom datasource pool, -1 when unknown.
+ */
+public abstract class PoolStatistics {
+    private static final boolean HIKARI_PRESENT = ClassUtils.isPresent("com.zaxxer.hikari.HikariDataSource",
+            PoolStatistics.class.getClassLoader());
+    private static final boolean TOMCAT_PRESENT = ClassUtils.isPresent("org.apache.tomcat.jdbc.pool.DataSource",
+            PoolStatistics.class.getClassLoader());
+
+    static final PoolStatistics UNKNOWN = new PoolStatistics() {
+    };
+
+    public static PoolStatistics of(DataSource dataSource) {
+        if (dataSource instanceof LazyInitializingDataSource) {
+            return new LazyPoolStatistics((LazyInitializingDataSource) dataSource);
+        }
+        if (HIKARI_PRESENT && HikariPoolStatistics.supports(dataSource)) {
+            return HikariPoolStatistics.statisticsOf(dataSource);
+        }
+        if (TOMCAT_PRESENT && TomcatPoolStatistics.supports(dataSource)) {
+            return new TomcatPoolStatistics((org.apache.tomcat.jdbc.pool.DataSource) dataSource);
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Makes a Hikari pool report its connection counts and times, lazy pools once they are created.
+     */
+    static void track(DataSource dataSource) {
+        if (dataSource instanceof LazyInitializingDataSource) {
+            ((LazyInitializingDataSource) dataSource).addTargetCustomizer(PoolStatistics::track);
+        } else if (HIKARI_PRESENT && HikariPoolStatistics.supports(dataSource)) {
+            HikariPoolStatistics.install((HikariDataSource) dataSource);
+        }
+    }
+
+    public int getActiveConnections() {
+        return -1;
+    }
+
+    public int getIdleConnections() {
+        return -1;
+    }
+
+    public int getTotalConnections() {
+        return -1;
+    }
+
+    public int getPendingThreads() {
+        return -1;
+    }
+
+    public int getMaximumPoolSize() {
+        return -1;
+    }
+
+    public int getMinimumIdle() {
+        return -1;
+    }
+
+    /**
+     * @return acquire and usage times of the pool, {@code null} if they aren't recorded
+     */
+    public ConnectionMetrics getConnectionMetrics() {
+        return null;
+    }
+
+    private static class LazyPoolStatistics extends PoolStatistics {
+        private final LazyInitializingDataSource dataSource;
+        private volatile PoolStatistics target;
+
+        LazyPoolStatistics(LazyInitializingDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        private PoolStatistics target() {
+            PoolStatistics statistics = target;
+            if (statistics == null) {
+                DataSource pool = dataSource.getTargetIfInitialized();
+                if (pool == null) {
+                    return UNKNOWN;
+                }
+                statistics = PoolStatistics.of(pool);
+                target = statistics;
+            }
+            return statistics;
+        }
+
+        @Override
+        public int getActiveConnections() {
+            return target().getActiveConnections();
+        }
+
+        @Override
+        public int getIdleConnections() {
+            return target().getIdleConnections();
+        }
+
+        @Override
+        public int getTotalConnections() {
+            return target().getTotalConnections();
+        }
+
+        @Override
+        public int getPendingThreads() {
+            return target().getPendingThreads();
+        }
+
+        @Override
+        public int getMaximumPoolSize() {
+            return target().getMaximumPoolSize();
+        }
+
+        @Override
+        public int getMinimumIdle() {
+            return target().getMinimumIdle();
+        }
+
+        @Override
+        public ConnectionMetrics getConnectionMetrics() {
+            return target().getConnectionMetrics();
+        }
+    }
+
+    /**
+     * Counts of a Hikari pool, taken from the {@link PoolStats} handed to the tracker factory.
+     */
+    static class HikariPoolStatistics extends PoolStatistics {
+        private static final Log logger = LogFactory.getLog(HikariPoolStatistics.class);
+        private static final String REGISTRY_TRACKER_FACTORY = "com.zaxxer.hikari.metrics.dropwizard.CodahaleMetricsTrackerFactory";
+        private static final Map<HikariDataSource, HikariPoolStatistics> STATISTICS = Collections.synchronizedMap(new WeakHashMap<>());
+        private final HikariDataSource dataSource;
+        private final ConnectionMetrics connectionMetrics = new ConnectionMetrics(true);
+        private volatile PoolStats poolStats;
+
+        HikariPoolStatistics(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        static boolean supports(DataSource dataSource) {
+            return dataSource instanceof HikariDataSource;
+        }
+
+        static HikariPoolStatistics statisticsOf(DataSource dataSource) {
+            return STATISTICS.computeIfAbsent((HikariDataSource) dataSource, HikariPoolStatistics::new);
+        }
+
+        /**
+         * Chains to the metrics tracker factory or registry of the pool, Hikari only takes one of them.
+         */
+        static synchronized void install(HikariDataSource dataSource) {
+            MetricsTrackerFactory configured = dataSource.getMetricsTrackerFactory();
+            if (configured instanceof TrackerFactory) {
+                return;
+            }
+            Object registry = dataSource.getMetricRegistry();
+            try {
+                if (registry != null) {
+                    configured = (MetricsTrackerFactory) BeanUtils.instantiateClass(
+                            ClassUtils.forName(REGISTRY_TRACKER_FACTORY, dataSource.getClass().getClassLoader()).getConstructors()[0], registry);
+                    dataSource.setMetricRegistry(null);
+                }
+                dataSource.setMetricsTrackerFactory(new TrackerFactory(statisticsOf(dataSource), configured));
+            } catch (IllegalStateException | ClassNotFoundException e) {
+                // Thrown once the pool has started with a tracker of its own.
+                logger.warn("Connection counts of pool " + dataSource.getPoolName() + " are unavailable: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public int getActiveConnections() {
+            PoolStats stats = poolStats;
+            return stats != null ? stats.getActiveConnections() : 0;
+        }
+
+        @Override
+        public int getIdleConnections() {
+            PoolStats stats = poolStats;
+            return stats != null ? stats.getIdleConnections() : 0;
+        }
+
+        @Override
+        public int getTotalConnections() {
+            PoolStats stats = poolStats;
+            return stats != null ? stats.getTotalConnections() : 0;
+        }
+
+        @Override
+        public int getPendingThreads() {
+            PoolStats stats = poolStats;
+            return stats != null ? stats.getPendingThreads() : 0;
+        }
+
+        @Override
+        public int getMaximumPoolSize() {
+            return dataSource.getMaximumPoolSize();
+        }
+
+        @Override
+        public int getMinimumIdle() {
+            return dataSource.getMinimumIdle();
+        }
+
+        @Override
+        public ConnectionMetrics getConnectionMetrics() {
+            return connectionMetrics;
+        }
+
+        static class TrackerFactory implements MetricsTrackerFactory {
+            private final HikariPoolStatistics statistics;
+            private final MetricsTrackerFactory delegate;
+
+            TrackerFactory(HikariPoolStatistics statistics, MetricsTrackerFactory delegate) {
+                this.statistics = statistics;
+                this.delegate = delegate;
+            }
+
+            @Override
+            public MetricsTracker create(String poolName, PoolStats poolStats) {
+                statistics.poolStats = poolStats;
+                ConnectionMetrics metrics = statistics.connectionMetrics;
+                MetricsTracker tracker = delegate != null ? delegate.create(poolName, poolStats) : new MetricsTracker();
+                return new MetricsTracker() {
+                    @Override
+                    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                        metrics.recordAcquire(elapsedAcquiredNanos);
+                        tracker.recordConnectionAcquiredNanos(elapsedAcquiredNanos);
+                    }
+
+                    @Override
+                    public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                        metrics.recordUsage(TimeUnit.MILLISECONDS.toNanos(elapsedBorrowedMillis));
+                        tracker.recordConnectionUsageMillis(elapsedBorrowedMillis);
+                    }
+
+                    @Override
+                    public void recordConnectionTimeout() {
+                        metrics.recordTimeout();
+                        tracker.recordConnectionTimeout();
+                    }
+
+                    @Override
+                    public void close() {
+                        tracker.close();
+                    }
+                };
+            }
+        }
+    }
+
+    /**
+     * Counts of a Tomcat pool, read without creating it.
+     */
+    static class TomcatPoolStatistics extends PoolStatistics {
+        private static final Map<PoolConfiguration, ConnectionMetrics> CONNECTION_METRICS = Collections.synchronizedMap(new WeakHashMap<>());
+        private final org.apache.tomcat.jdbc.pool.DataSource dataSource;
+
+        TomcatPoolStatistics(org.apache.tomcat.jdbc.pool.DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        static boolean supports(DataSource dataSource) {
+            return dataSource instanceof org.apache.tomcat.jdbc.pool.DataSource;
+        }
+
+        @Override
+        public int getActiveConnections() {
+            ConnectionPool pool = dataSource.getPool();
+            return pool != null ? pool.getActive() : 0;
+        }
+
+        @Override
+        public int getIdleConnections() {
+            ConnectionPool pool = dataSource.getPool();
+            return pool != null ? pool.getIdle() : 0;
+        }
+
+        @Override
+        public int getTotalConnections() {
+            ConnectionPool pool = dataSource.getPool();
+            return pool != null ? pool.getSize() : 0;
+        }
+
+        @Override
+        public int getPendingThreads() {
+            ConnectionPool pool = dataSource.getPool();
+            return pool != null ? pool.getWaitCount() : 0;
+        }
+
+        @Override
+        public int getMaximumPoolSize() {
+            return dataSource.getMaxActive();
+        }
+
+        @Override
+        public int getMinimumIdle() {
+            return dataSource.getMinIdle();
+        }
+
+        @Override
+        public ConnectionMetrics getConnectionMetrics() {
+            return CONNECTION_METRICS.get(dataSource.getPoolProperties());
+        }
+
+        static void installUsageInterceptor(DataSource dataSource) {
+            if (!supports(dataSource)) {
+                return;
+            }
+            PoolConfiguration poolProperties = ((org.apache.tomcat.jdbc.pool.DataSource) dataSource).getPoolProperties();
+            synchronized (CONNECTION_METRICS) {
+                if (CONNECTION_METRICS.containsKey(poolProperties)) {
+                    return;
+                }
+                CONNECTION_METRICS.put(poolProperties, new ConnectionMetrics(false));
+                // Read on every checkout, connections borrowed from now on are measured.
+                String interceptors = poolProperties.getJdbcInterceptors();
+                poolProperties.setJdbcInterceptors((StringUtils.hasText(interceptors) ? interceptors + ";" : "") + UsageInterceptor.class.getName());
+            }
+        }
+
+        public static class UsageInterceptor extends JdbcInterceptor {
+            private ConnectionMetrics metrics;
+            private long borrowedAt;
+
+            @Override
+            public void reset(ConnectionPool parent, PooledConnection con) {
+                if (parent == null) {
+                    return;
+                }
+                if (metrics == null) {
+                    metrics = CONNECTION_METRICS.get(parent.getPoolProperties());
+                }
+                borrowedAt = System.nanoTime();
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (borrowedAt != 0 && compare(CLOSE_VAL, method)) {
+                    if (metrics != null) {
+                        metrics.recordUsage(System.nanoTime() - borrowedAt);
+                    }
+                    borrowedAt = 0;
+                }
+                return super.invoke(proxy, method, args);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DataSource of a read/write group, read-only transactions go to a replica.
+ */
+public class ReadWriteSplittingDataSource extends DeferredDefaultsDataSourceProxy {
+    private String name;
+    private ReadWriteRoutingDataSource routingDataSource;
+
+    public ReadWriteSplittingDataSource() {
+    }
+
+    ReadWriteSplittingDataSource(String name, DataSource primary, List<DataSource> replicas, ReplicaLoadBalancer loadBalancer,
+                                 DataSourceCircuitBreaker primaryCircuitBreaker, DataSourceCircuitBreaker[] replicaCircuitBreakers) {
+        this.name = name;
+        this.routingDataSource = new ReadWriteRoutingDataSource(primary, replicas, loadBalancer, primaryCircuitBreaker, replicaCircuitBreakers);
+        this.routingDataSource.afterPropertiesSet();
+        setTargetDataSource(this.routingDataSource);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public DataSource getPrimary() {
+        return routingDataSource.primary;
+    }
+
+    public List<DataSource> getReplicas() {
+        return routingDataSource.replicas;
+    }
+
+    @Override
+    protected DataSource getDefaultsDataSource() {
+        return routingDataSource != null ? routingDataSource.primary : null;
+    }
+
+    static class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+        private static final String PRIMARY_KEY = "primary";
+        private final DataSource primary;
+        private final List<DataSource> replicas;
+        private final DataSource[] replicaArray;
+        private final Integer[] replicaKeys;
+        private final ReplicaLoadBalancer loadBalancer;
+        private final DataSourceCircuitBreaker primaryCircuitBreaker;
+        private final DataSourceCircuitBreaker[] replicaCircuitBreakers;
+
+        ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas, ReplicaLoadBalancer loadBalancer,
+                                   DataSourceCircuitBreaker primaryCircuitBreaker, DataSourceCircuitBreaker[] replicaCircuitBreakers) {
+            this.primary = primary;
+            this.primaryCircuitBreaker = primaryCircuitBreaker;
+            this.replicaCircuitBreakers = replicaCircuitBreakers;
+            this.replicas = replicas;
+            this.replicaArray = replicas.toArray(new DataSource[replicas.size()]);
+            this.loadBalancer = loadBalancer;
+            this.replicaKeys = new Integer[replicas.size()];
+            Map<Object, Object> targetDataSources = new HashMap<>();
+            targetDataSources.put(PRIMARY_KEY, primary);
+            for (int i = 0; i < replicas.size(); i++) {
+                replicaKeys[i] = i;
+                targetDataSources.put(replicaKeys[i], replicas.get(i));
+            }
+            setTargetDataSources(targetDataSources);
+            setDefaultTargetDataSource(primary);
+        }
+
+        @Override
+        protected Object determineCurrentLookupKey() {
+            if (replicaKeys.length == 0 || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                return PRIMARY_KEY;
+            }
+            return replicaKeys[loadBalancer.select()];
+        }
+
+        /**
+         * Same routing as {@link #determineCurrentLookupKey()}, timing the replica checkout.
+         */
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (replicaArray.length == 0 || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                return getConnection(primary, primaryCircuitBreaker);
+            }
+            int replica = selectReplica();
+            if (replica < 0) {
+                return getConnection(primary, primaryCircuitBreaker);
+            }
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                Connection connection = replicaCircuitBreakers != null
+                        ? getConnection(replicaArray[replica], replicaCircuitBreakers[replica]) : replicaArray[replica].getConnection();
+                success = true;
+                return connection;
+            } finally {
+                loadBalancer.recordAcquire(replica, System.nanoTime() - start, success);
+            }
+        }
+
+        /**
+         * @return the replica chosen by the load balancer or the next one with a closed breaker, -1 if all are open
+         */
+        private int selectReplica() {
+            int replica = loadBalancer.select();
+            if (replicaCircuitBreakers == null) {
+                return replica;
+            }
+            for (int i = 0; i < replicaCircuitBreakers.length; i++) {
+                int candidate = (replica + i) % replicaCircuitBreakers.length;
+                if (replicaCircuitBreakers[candidate] == null || !replicaCircuitBreakers[candidate].isOpen()) {
+                    return candidate;
+                }
+            }
+            return -1;
+        }
+
+        private static Connection getConnection(DataSource dataSource, DataSourceCircuitBreaker circuitBreaker) throws SQLException {
+            return circuitBreaker != null ? circuitBreaker.getConnection(dataSource) : dataSource.getConnection();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Chooses the replica of a read/write group serving the next read-only connection.
+ */
+public interface ReplicaLoadBalancer {
+
+    /**
+     * Called once before the group serves connections.
+     *
+     * @param groupName name of the read/write group
+     * @param replicas  replicas in declaration order, indexes returned by {@link #select()} refer to this list
+     * @param weights   configured weight of every replica, 1 when not configured
+     */
+    void init(String groupName, List<DataSource> replicas, int[] weights);
+
+    /**
+     * @return index of the replica to borrow a connection from
+     */
+    int select();
+
+    /**
+     * Reports how long borrowing a connection from a replica took.
+     *
+     * @param replica      index of the replica
+     * @param elapsedNanos time spent in getConnection()
+     * @param success      false if getConnection() failed
+     */
+    default void recordAcquire(int replica, long elapsedNanos, boolean success) {
+    }
+}
@@ -0,0 +1,192 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Built-in {@link ReplicaLoadBalancer} strategies.
+ */
+public final class ReplicaLoadBalancers {
+    public static final String ROUND_ROBIN = "round-robin";
+    public static final String WEIGHTED = "weighted";
+    public static final String LEAST_ACTIVE = "least-active";
+    public static final String EWMA_LATENCY = "ewma-latency";
+
+    private ReplicaLoadBalancers() {
+    }
+
+    /**
+     * @param strategy one of the built-in strategy names or the fully qualified name of a {@link ReplicaLoadBalancer}
+     */
+    static ReplicaLoadBalancer create(String strategy, ClassLoader classLoader) {
+        if (!StringUtils.hasText(strategy) || ROUND_ROBIN.equals(strategy)) {
+            return new RoundRobin();
+        } else if (WEIGHTED.equals(strategy)) {
+            return new Weighted();
+        } else if (LEAST_ACTIVE.equals(strategy)) {
+            return new LeastActive();
+        } else if (EWMA_LATENCY.equals(strategy)) {
+            return new EwmaLatency();
+        }
+        try {
+            Class<?> type = ClassUtils.forName(strategy, classLoader);
+            return (ReplicaLoadBalancer) BeanUtils.instantiateClass(type);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IllegalStateException("Unknown replica load balancer: " + strategy, e);
+        }
+    }
+
+    public static class RoundRobin implements ReplicaLoadBalancer {
+        private final AtomicInteger counter = new AtomicInteger();
+        private int size;
+
+        @Override
+        public void init(String groupName, List<DataSource> replicas, int[] weights) {
+            this.size = replicas.size();
+        }
+
+        @Override
+        public int select() {
+            return (counter.getAndIncrement() & Integer.MAX_VALUE) % size;
+        }
+    }
+
+    /**
+     * Picks replicas at random in proportion to their weights.
+     */
+    public static class Weighted implements ReplicaLoadBalancer {
+        private int[] cumulativeWeights;
+        private int totalWeight;
+
+        @Override
+        public void init(String groupName, List<DataSource> replicas, int[] weights) {
+            cumulativeWeights = new int[weights.length];
+            for (int i = 0; i < weights.length; i++) {
+                if (weights[i] <= 0) {
+                    throw new IllegalStateException("Weights of read/write group " + groupName + " must be positive.");
+                }
+                totalWeight += weights[i];
+                cumulativeWeights[i] = totalWeight;
+            }
+        }
+
+        @Override
+        public int select() {
+            int point = ThreadLocalRandom.current().nextInt(totalWeight);
+            int index = Arrays.binarySearch(cumulativeWeights, point + 1);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+
+    /**
+     * Picks the replica with the fewest active connections plus waiting threads.
+     */
+    public static class LeastActive implements ReplicaLoadBalancer {
+        private final AtomicInteger offset = new AtomicInteger();
+        private PoolStatistics[] statistics;
+
+        @Override
+        public void init(String groupName, List<DataSource> replicas, int[] weights) {
+            statistics = new PoolStatistics[replicas.size()];
+            for (int i = 0; i < statistics.length; i++) {
+                statistics[i] = PoolStatistics.of(replicas.get(i));
+            }
+        }
+
+        @Override
+        public int select() {
+            int size = statistics.length;
+            int start = (offset.getAndIncrement() & Integer.MAX_VALUE) % size;
+            int selected = start;
+            int lowestLoad = Integer.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                int index = (start + i) % size;
+                int load = load(statistics[index]);
+                if (load < lowestLoad) {
+                    lowestLoad = load;
+                    selected = index;
+                }
+            }
+            return selected;
+        }
+
+        private static int load(PoolStatistics statistics) {
+            return Math.max(statistics.getActiveConnections(), 0) + Math.max(statistics.getPendingThreads(), 0);
+        }
+    }
+
+    /**
+     * Picks the replica with the lowest moving average of acquisition time times active connections.
+     */
+    public static class EwmaLatency implements ReplicaLoadBalancer {
+        private static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+        private static final int EXPLORATION_MASK = 31;
+        private final AtomicInteger counter = new AtomicInteger();
+        private AtomicLongArray averageNanos;
+        private PoolStatistics[] statistics;
+
+        @Override
+        public void init(String groupName, List<DataSource> replicas, int[] weights) {
+            averageNanos = new AtomicLongArray(replicas.size());
+            statistics = new PoolStatistics[replicas.size()];
+            for (int i = 0; i < statistics.length; i++) {
+                statistics[i] = PoolStatistics.of(replicas.get(i));
+            }
+        }
+
+        @Override
+        public int select() {
+            int size = statistics.length;
+            int count = counter.getAndIncrement() & Integer.MAX_VALUE;
+            if ((count & EXPLORATION_MASK) == 0) {
+                return (count >>> 5) % size;
+            }
+            int selected = 0;
+            long lowestScore = Long.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                long score = averageNanos.get(i) * (Math.max(statistics[i].getActiveConnections(), 0) + 1);
+                if (score < lowestScore) {
+                    lowestScore = score;
+                    selected = i;
+                }
+            }
+            return selected;
+        }
+
+        @Override
+        public void recordAcquire(int replica, long elapsedNanos, boolean success) {
+            long sample = success ? elapsedNanos : Math.max(elapsedNanos, FAILURE_PENALTY_NANOS);
+            long previous;
+            long next;
+            do {
+                previous = averageNanos.get(replica);
+                // alpha = 1/8
+                next = previous == 0 ? sample : previous + ((sample - previous) >> 3);
+            } while (!averageNanos.compareAndSet(replica, previous, Math.max(next, 1)));
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * DataSource of a sharding group, routing to the shard named on top of {@link MultiDataSourceContextHolder}.
+ */
+public class ShardingDataSource extends DeferredDefaultsDataSourceProxy implements DisposableBean {
+    private String name;
+    private List<String> shardNames;
+    private List<DataSource> shards;
+    private ShardingStrategy strategy;
+    private ShardRoutingDataSource routingDataSource;
+    private ExecutorService scatterGatherExecutor;
+
+    public ShardingDataSource() {
+    }
+
+    ShardingDataSource(String name, List<String> shardNames, List<DataSource> shards, ShardingStrategy strategy,
+                       DataSourceCircuitBreaker[] circuitBreakers, int scatterGatherThreads) {
+        this.name = name;
+        this.shardNames = Collections.unmodifiableList(new ArrayList<>(shardNames));
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        this.strategy = strategy;
+        this.routingDataSource = new ShardRoutingDataSource(this, this.shardNames, this.shards, circuitBreakers);
+        this.routingDataSource.afterPropertiesSet();
+        setTargetDataSource(this.routingDataSource);
+        int threads = scatterGatherThreads > 0 ? scatterGatherThreads : shards.size();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new MultiDataSourceTasks.NamedThreadFactory("scatter gather " + name));
+        executor.allowCoreThreadTimeOut(true);
+        this.scatterGatherExecutor = executor;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Stops the scatter-gather threads, queries still running are interrupted.
+     */
+    @Override
+    public void destroy() {
+        if (scatterGatherExecutor != null) {
+            scatterGatherExecutor.shutdownNow();
+        }
+    }
+
+    public List<String> getShardNames() {
+        return shardNames;
+    }
+
+    public List<DataSource> getShards() {
+        return shards;
+    }
+
+    @Override
+    protected DataSource getDefaultsDataSource() {
+        return shards != null && !shards.isEmpty() ? shards.get(0) : null;
+    }
+
+    /**
+     * @return name of the shard holding the key
+     */
+    public String determineShard(Object shardKey) {
+        if (shardKey == null) {
+            throw new IllegalArgumentException("Shard key of " + name + " must not be null.");
+        }
+        return shardNames.get(strategy.shardFor(shardKey));
+    }
+
+    /**
+     * Runs the call with the shard holding the key selected.
+     */
+    public <T> T onShard(Object shardKey, Supplier<T> call) {
+        return onShardNamed(determineShard(shardKey), call);
+    }
+
+    private <T> T onShardNamed(String shard, Supplier<T> call) {
+        String boundShard = (String) TransactionSynchronizationManager.getResource(routingDataSource.boundShardKey);
+        if (boundShard != null && !boundShard.equals(shard)) {
+            throw new IllegalStateException("Cannot select shard " + shard + " of " + name
+                    + ", the connection of the current transaction is bound to shard " + boundShard + ".");
+        }
+        MultiDataSourceContextHolder.push(shard);
+        try {
+            return call.get();
+        } finally {
+            MultiDataSourceContextHolder.pop();
+        }
+    }
+
+    /**
+     * Runs the query on all shards in parallel, the shard is selected while it runs and passed in as well.
+     *
+     * @return the results of the shards in shard order, the results of a shard are available as soon as it and the shards before it are done
+     */
+    public <T> Stream<T> scatterGather(Function<String, ? extends Collection<? extends T>> query) {
+        List<Future<Collection<? extends T>>> futures = submitAll(query);
+        return IntStream.range(0, futures.size()).boxed()
+                .<T>flatMap(i -> this.<T>await(i, futures).stream())
+                .onClose(() -> cancel(futures));
+    }
+
+    /**
+     * Runs the query on all shards in parallel and merges their sorted results.
+     */
+    public <T> Stream<T> scatterGather(Function<String, ? extends Collection<? extends T>> query, Comparator<? super T> order) {
+        List<Future<Collection<? extends T>>> futures = submitAll(query);
+        Iterator<T> merged = new MergingIterator<>(futures, order);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED), false)
+                .onClose(() -> cancel(futures));
+    }
+
+    private <T> List<Future<Collection<? extends T>>> submitAll(Function<String, ? extends Collection<? extends T>> query) {
+        List<Future<Collection<? extends T>>> futures = new ArrayList<>(shardNames.size());
+        for (String shard : shardNames) {
+            Callable<Collection<? extends T>> call = () -> onShardNamed(shard, () -> query.apply(shard));
+            futures.add(scatterGatherExecutor.submit(call));
+        }
+        return futures;
+    }
+
+    private <T> Collection<? extends T> await(int shard, List<Future<Collection<? extends T>>> futures) {
+        try {
+            Collection<? extends T> results = futures.get(shard).get();
+            return results != null ? results : Collections.<T>emptyList();
+        } catch (ExecutionException e) {
+            cancel(futures);
+            throw new IllegalStateException("Scatter-gather query of " + name + " failed on shard " + shardNames.get(shard), e.getCause());
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for shard " + shardNames.get(shard) + " of " + name, e);
+        }
+    }
+
+    private static void cancel(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * K-way merge keeping the next element of every shard in a priority queue.
+     */
+    private class MergingIterator<T> implements Iterator<T> {
+        private final List<Future<Collection<? extends T>>> futures;
+        private final Comparator<? super T> order;
+        private PriorityQueue<Head<T>> heads;
+
+        MergingIterator(List<Future<Collection<? extends T>>> futures, Comparator<? super T> order) {
+            this.futures = futures;
+            this.order = order;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (heads == null) {
+                heads = new PriorityQueue<>(Math.max(1, futures.size()), (a, b) -> {
+                    int result = order.compare(a.value, b.value);
+                    return result != 0 ? result : Integer.compare(a.shard, b.shard);
+                });
+                for (int i = 0; i < futures.size(); i++) {
+                    Iterator<? extends T> results = ShardingDataSource.this.<T>await(i, futures).iterator();
+                    if (results.hasNext()) {
+                        heads.add(new Head<>(i, results.next(), results));
+                    }
+                }
+            }
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Head<T> head = heads.poll();
+            T value = head.value;
+            if (head.rest.hasNext()) {
+                heads.add(new Head<>(head.shard, head.rest.next(), head.rest));
+            }
+            return value;
+        }
+    }
+
+    private static class Head<T> {
+        final int shard;
+        final T value;
+        final Iterator<? extends T> rest;
+
+        Head(int shard, T value, Iterator<? extends T> rest) {
+            this.shard = shard;
+            this.value = value;
+            this.rest = rest;
+        }
+    }
+
+    static class ShardRoutingDataSource extends AbstractRoutingDataSource {
+        private final ShardingDataSource group;
+        private final String groupName;
+        // Transaction resource holding the shard the connection of the group's transaction is bound to.
+        private final Object boundShardKey = new Object();
+        private final Map<String, Integer> shardIndexes = new HashMap<>();
+        private final String[] shardNames;
+        private final DataSource[] shards;
+        private final DataSourceCircuitBreaker[] circuitBreakers;
+
+        ShardRoutingDataSource(ShardingDataSource group, List<String> shardNames, List<DataSource> shards, DataSourceCircuitBreaker[] circuitBreakers) {
+            this.group = group;
+            this.groupName = group.name;
+            this.shardNames = shardNames.toArray(new String[shardNames.size()]);
+            this.shards = shards.toArray(new DataSource[shards.size()]);
+            this.circuitBreakers = circuitBreakers;
+            Map<Object, Object> targetDataSources = new HashMap<>();
+            for (int i = 0; i < shardNames.size(); i++) {
+                shardIndexes.put(shardNames.get(i), i);
+                targetDataSources.put(shardNames.get(i), shards.get(i));
+            }
+            setTargetDataSources(targetDataSources);
+        }
+
+        @Override
+        protected Object determineCurrentLookupKey() {
+            return MultiDataSourceContextHolder.peek();
+        }
+
+        @Override
+        protected DataSource determineTargetDataSource() {
+            return shards[currentShard()];
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            int shard = currentShard();
+            DataSourceCircuitBreaker circuitBreaker = circuitBreakers != null ? circuitBreakers[shard] : null;
+            Connection connection = circuitBreaker != null ? circuitBreaker.getConnection(shards[shard]) : shards[shard].getConnection();
+            bindToTransaction(shard);
+            return connection;
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            int shard = currentShard();
+            DataSourceCircuitBreaker circuitBreaker = circuitBreakers != null ? circuitBreakers[shard] : null;
+            Connection connection = circuitBreaker != null ? circuitBreaker.getConnection(shards[shard], username, password)
+                    : shards[shard].getConnection(username, password);
+            bindToTransaction(shard);
+            return connection;
+        }
+
+        /**
+         * Records the shard of a connection held by a transaction of the group until the transaction completes.
+         */
+        private void bindToTransaction(int shard) {
+            if (TransactionSynchronizationManager.isSynchronizationActive() && TransactionSynchronizationManager.hasResource(group)
+                    && !TransactionSynchronizationManager.hasResource(boundShardKey)) {
+                TransactionSynchronizationManager.bindResource(boundShardKey, shardNames[shard]);
+                TransactionSynchronizationManager.registerSynchronization(new ShardBinding(boundShardKey, shardNames[shard]));
+            }
+        }
+
+        private int currentShard() {
+            String key = MultiDataSourceContextHolder.peek();
+            Integer shard = key != null ? shardIndexes.get(key) : null;
+            if (shard == null) {
+                throw new IllegalStateException(key == null ? "No shard of " + groupName + " selected, use onShard() or scatterGather()."
+                        : "Cannot route " + groupName + " to " + key + ", it isn't one of its shards.");
+            }
+            return shard;
+        }
+    }
+
+    private static class ShardBinding extends TransactionSynchronizationAdapter {
+        private final Object key;
+        private final String shard;
+
+        ShardBinding(Object key, String shard) {
+            this.key = key;
+            this.shard = shard;
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(key);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(key, shard);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(key);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Built-in {@link ShardingStrategy} strategies.
+ */
+public final class ShardingStrategies {
+    public static final String HASH = "hash";
+    public static final String RANGE = "range";
+    public static final String LOOKUP = "lookup";
+
+    private ShardingStrategies() {
+    }
+
+    /**
+     * @param strategy one of the built-in strategy names or the fully qualified name of a {@link ShardingStrategy}
+     */
+    static ShardingStrategy create(String strategy, ClassLoader classLoader) {
+        if (!StringUtils.hasText(strategy) || HASH.equals(strategy)) {
+            return new Hash();
+        } else if (RANGE.equals(strategy)) {
+            return new Range();
+        } else if (LOOKUP.equals(strategy)) {
+            return new Lookup();
+        }
+        try {
+            Class<?> type = ClassUtils.forName(strategy, classLoader);
+            return (ShardingStrategy) BeanUtils.instantiateClass(type);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IllegalStateException("Unknown sharding strategy: " + strategy, e);
+        }
+    }
+
+    private static long longValue(String groupName, Object shardKey) {
+        if (shardKey instanceof Number) {
+            return ((Number) shardKey).longValue();
+        }
+        try {
+            return Long.parseLong(String.valueOf(shardKey).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Shard key of " + groupName + " must be numeric: " + shardKey, e);
+        }
+    }
+
+    /**
+     * Integral keys modulo the number of shards, other keys by their hash code.
+     */
+    public static class Hash implements ShardingStrategy {
+        private int shards;
+
+        @Override
+        public void init(String groupName, List<String> shards, MultiDataSourceProperties.ShardingGroup group) {
+            this.shards = shards.size();
+        }
+
+        @Override
+        public int shardFor(Object shardKey) {
+            if (shardKey instanceof Long || shardKey instanceof Integer || shardKey instanceof Short || shardKey instanceof Byte) {
+                return (int) Math.floorMod(((Number) shardKey).longValue(), (long) shards);
+            }
+            BigInteger integral = integralValue(shardKey);
+            if (integral != null) {
+                return integral.mod(BigInteger.valueOf(shards)).intValue();
+            }
+            return Math.floorMod(shardKey.hashCode(), shards);
+        }
+
+        private static BigInteger integralValue(Object shardKey) {
+            if (shardKey instanceof BigInteger) {
+                return (BigInteger) shardKey;
+            } else if (shardKey instanceof BigDecimal) {
+                try {
+                    return ((BigDecimal) shardKey).toBigIntegerExact();
+                } catch (ArithmeticException e) {
+                    return null;
+                }
+            } else if (shardKey instanceof CharSequence) {
+                String value = shardKey.toString().trim();
+                return isInteger(value) ? new BigInteger(value) : null;
+            }
+            return null;
+        }
+
+        private static boolean isInteger(String value) {
+            int start = value.startsWith("-") || value.startsWith("+") ? 1 : 0;
+            if (value.length() == start) {
+                return false;
+            }
+            for (int i = start; i < value.length(); i++) {
+                if (!Character.isDigit(value.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Numeric keys by the range bounds, the last shard takes the keys from the last bound up.
+     */
+    public static class Range implements ShardingStrategy {
+        private String groupName;
+        private long[] bounds;
+
+        @Override
+        public void init(String groupName, List<String> shards, MultiDataSourceProperties.ShardingGroup group) {
+            List<Long> rangeBounds = group.getRangeBounds();
+            if (rangeBounds.size() != shards.size() - 1) {
+                throw new IllegalStateException("============ Failed to create " + groupName + ", " + shards.size()
+                        + " shards need " + (shards.size() - 1) + " range-bounds but got " + rangeBounds.size());
+            }
+            this.groupName = groupName;
+            this.bounds = new long[rangeBounds.size()];
+            for (int i = 0; i < bounds.length; i++) {
+                bounds[i] = rangeBounds.get(i);
+                if (i > 0 && bounds[i] <= bounds[i - 1]) {
+                    throw new IllegalStateException("============ Failed to create " + groupName + ", range-bounds must be ascending: " + rangeBounds);
+                }
+            }
+        }
+
+        @Override
+        public int shardFor(Object shardKey) {
+            int index = Arrays.binarySearch(bounds, longValue(groupName, shardKey));
+            // An exact match is the first key of the next shard.
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+    }
+
+    /**
+     * Shard named for the key in the lookup table, keys are compared by their string form.
+     */
+    public static class Lookup implements ShardingStrategy {
+        private String groupName;
+        private final Map<String, Integer> shardIndexes = new HashMap<>();
+
+        @Override
+        public void init(String groupName, List<String> shards, MultiDataSourceProperties.ShardingGroup group) {
+            this.groupName = groupName;
+            for (Map.Entry<String, String> entry : group.getLookup().entrySet()) {
+                int index = shards.indexOf(entry.getValue());
+                if (index < 0) {
+                    throw new IllegalStateException("============ Failed to create " + groupName + ", lookup key " + entry.getKey()
+                            + " refers to unknown shard: " + entry.getValue());
+                }
+                shardIndexes.put(entry.getKey(), index);
+            }
+        }
+
+        @Override
+        public int shardFor(Object shardKey) {
+            Integer index = shardIndexes.get(String.valueOf(shardKey));
+            if (index == null) {
+                throw new IllegalArgumentException("No shard of " + groupName + " found for key: " + shardKey);
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import java.util.List;
+
+/**
+ * Maps the shard key of a call to the shard of a sharding group holding it.
+ */
+public interface ShardingStrategy {
+
+    /**
+     * Called once before the group routes calls.
+     *
+     * @param groupName name of the sharding group
+     * @param shards    names of the shards in declaration order, indexes returned by {@link #shardFor(Object)} refer to this list
+     * @param group     settings of the group, like the range bounds or the lookup table
+     */
+    void init(String groupName, List<String> shards, MultiDataSourceProperties.ShardingGroup group);
+
+    /**
+     * @param shardKey key of the row, e.g. a customer id
+     * @return index of the shard holding the key
+     */
+    int shardFor(Object shardKey);
+}
@@ -0,0 +1,230 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.io.Resource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs SQL scripts statement by statement while reading them.
+ */
+final class SqlScriptRunner {
+    private static final Log logger = LogFactory.getLog(SqlScriptRunner.class);
+    static final int BATCH_SIZE = 500;
+
+    private final String dataSourceName;
+    private final String separator;
+    private final boolean continueOnError;
+    private final Charset encoding;
+
+    SqlScriptRunner(String dataSourceName, String separator, boolean continueOnError, Charset encoding) {
+        this.dataSourceName = dataSourceName;
+        this.separator = separator != null && !separator.isEmpty() ? separator : ";";
+        this.continueOnError = continueOnError;
+        this.encoding = encoding != null ? encoding : Charset.defaultCharset();
+    }
+
+    void run(Connection connection, Resource script) throws IOException, SQLException {
+        long start = System.currentTimeMillis();
+        boolean batchUpdates = connection.getMetaData().supportsBatchUpdates();
+        List<String> batch = new ArrayList<>();
+        int count = 0;
+        try (StatementReader reader = new StatementReader(new InputStreamReader(script.getInputStream(), encoding), separator);
+             Statement statement = connection.createStatement()) {
+            String sql;
+            while ((sql = reader.next()) != null) {
+                count++;
+                if (batchUpdates && isBatchable(sql)) {
+                    statement.addBatch(sql);
+                    batch.add(sql);
+                    if (batch.size() >= BATCH_SIZE) {
+                        executeBatch(statement, batch, script);
+                    }
+                } else {
+                    executeBatch(statement, batch, script);
+                    execute(statement, sql, script);
+                }
+            }
+            executeBatch(statement, batch, script);
+        }
+        logger.info("Executed " + count + " statements of " + script.getDescription() + " on DataSource " + dataSourceName
+                + " in " + (System.currentTimeMillis() - start) + " ms.");
+    }
+
+    private static boolean isBatchable(String sql) {
+        return sql.regionMatches(true, 0, "insert", 0, 6) || sql.regionMatches(true, 0, "update", 0, 6)
+                || sql.regionMatches(true, 0, "delete", 0, 6);
+    }
+
+    private void execute(Statement statement, String sql, Resource script) throws SQLException {
+        try {
+            statement.execute(sql);
+        } catch (SQLException e) {
+            failed(sql, script, e);
+        }
+    }
+
+    /**
+     * Statements after a failure the driver didn't run are executed one by one.
+     */
+    private void executeBatch(Statement statement, List<String> batch, Resource script) throws SQLException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            statement.executeBatch();
+        } catch (BatchUpdateException e) {
+            int[] updateCounts = e.getUpdateCounts() != null ? e.getUpdateCounts() : new int[0];
+            int failed = updateCounts.length < batch.size() ? updateCounts.length : indexOfFailure(updateCounts);
+            failed(batch.get(Math.max(failed, 0)), script, e);
+            statement.clearBatch();
+            if (updateCounts.length < batch.size()) {
+                for (int i = updateCounts.length + 1; i < batch.size(); i++) {
+                    execute(statement, batch.get(i), script);
+                }
+            }
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private static int indexOfFailure(int[] updateCounts) {
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void failed(String sql, Resource script, SQLException e) {
+        if (!continueOnError) {
+            throw new IllegalStateException("============ Failed to execute SQL script " + script.getDescription()
+                    + " on DataSource " + dataSourceName + ": " + sql, e);
+        }
+        logger.warn("Failed to execute statement of " + script.getDescription() + " on DataSource " + dataSourceName
+                + ", continuing: " + sql + " (" + e.getMessage() + ")");
+    }
+
+    /**
+     * Splits a script into statements while reading it.
+     */
+    static final class StatementReader implements AutoCloseable {
+        private final Reader reader;
+        private final String separator;
+        private final StringBuilder statement = new StringBuilder();
+
+        StatementReader(Reader reader, String separator) {
+            this.reader = new BufferedReader(reader);
+            this.separator = separator;
+        }
+
+        /**
+         * @return the next statement without separator, {@code null} at the end of the script
+         */
+        String next() throws IOException {
+            statement.setLength(0);
+            char quote = 0;
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (quote != 0) {
+                    statement.append((char) c);
+                    if (c == '\\') {
+                        int escaped = reader.read();
+                        if (escaped != -1) {
+                            statement.append((char) escaped);
+                        }
+                    } else if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '\'' || c == '"') {
+                    quote = (char) c;
+                    statement.append((char) c);
+                } else if (c == '-' && endsWith('-')) {
+                    statement.setLength(statement.length() - 1);
+                    skipLine();
+                    statement.append('\n');
+                } else if (c == '*' && endsWith('/')) {
+                    statement.setLength(statement.length() - 1);
+                    skipBlockComment();
+                    statement.append(' ');
+                } else {
+                    statement.append((char) c);
+                    if (endsWithSeparator()) {
+                        statement.setLength(statement.length() - separator.length());
+                        String sql = statement.toString().trim();
+                        if (!sql.isEmpty()) {
+                            return sql;
+                        }
+                        statement.setLength(0);
+                    }
+                }
+            }
+            String sql = statement.toString().trim();
+            return sql.isEmpty() ? null : sql;
+        }
+
+        private boolean endsWith(char c) {
+            return statement.length() > 0 && statement.charAt(statement.length() - 1) == c;
+        }
+
+        private boolean endsWithSeparator() {
+            int offset = statement.length() - separator.length();
+            if (offset < 0) {
+                return false;
+            }
+            for (int i = 0; i < separator.length(); i++) {
+                if (statement.charAt(offset + i) != separator.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void skipLine() throws IOException {
+            int c;
+            while ((c = reader.read()) != -1 && c != '\n') {
+                // skip
+            }
+        }
+
+        private void skipBlockComment() throws IOException {
+            int previous = 0;
+            int c;
+            while ((c = reader.read()) != -1 && !(previous == '*' && c == '/')) {
+                previous = c;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.ibatis.mapping.MappedStatement;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statement latencies of one datasource, per mapped statement id and in total.
+ */
+public class StatementMetrics implements StatementMetricsMXBean {
+    private final String name;
+    private final long slowThresholdNanos;
+    private final Recorder total = new Recorder("*");
+    private final ConcurrentMap<String, Recorder> statements = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<SlowStatement> slowStatements;
+    private final AtomicLong slowStatementCursor = new AtomicLong();
+
+    StatementMetrics(String name, long slowThresholdMillis, int slowStatementSamples) {
+        this.name = name;
+        this.slowThresholdNanos = slowThresholdMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis) : Long.MAX_VALUE;
+        this.slowStatements = new AtomicReferenceArray<>(Math.max(1, slowStatementSamples));
+    }
+
+    void record(MappedStatement mappedStatement, Object parameter, long nanos, int rows, boolean failed) {
+        Recorder recorder = statements.get(mappedStatement.getId());
+        if (recorder == null) {
+            recorder = statements.computeIfAbsent(mappedStatement.getId(), Recorder::new);
+        }
+        recorder.record(nanos, rows, failed);
+        total.record(nanos, rows, failed);
+        if (nanos >= slowThresholdNanos) {
+            int slot = (int) (slowStatementCursor.getAndIncrement() % slowStatements.length());
+            slowStatements.set(slot, new SlowStatement(mappedStatement, parameter, nanos));
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram getLatency() {
+        return total.latency;
+    }
+
+    /**
+     * @return the latency histogram of the statement, {@code null} if it is unknown
+     */
+    public LatencyHistogram getLatency(String statementId) {
+        Recorder recorder = statements.get(statementId);
+        return recorder != null ? recorder.latency : null;
+    }
+
+    @Override
+    public StatementSummary getTotal() {
+        return total.summary();
+    }
+
+    @Override
+    public List<StatementSummary> getStatements() {
+        List<StatementSummary> summaries = new ArrayList<>();
+        for (Recorder recorder : statements.values()) {
+            if (recorder.latency.getCount() > 0) {
+                summaries.add(recorder.summary());
+            }
+        }
+        summaries.sort(Comparator.comparing(StatementSummary::getId));
+        return summaries;
+    }
+
+    @Override
+    public List<SlowStatement> getSlowStatements() {
+        List<SlowStatement> samples = new ArrayList<>();
+        for (int i = 0; i < slowStatements.length(); i++) {
+            SlowStatement sample = slowStatements.get(i);
+            if (sample != null) {
+                samples.add(sample);
+            }
+        }
+        samples.sort(Comparator.comparingLong(SlowStatement::getTimestamp).reversed());
+        return samples;
+    }
+
+    private static class Recorder {
+        private final String id;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        Recorder(String id) {
+            this.id = id;
+        }
+
+        void record(long nanos, int rowCount, boolean failed) {
+            latency.record(nanos);
+            if (rowCount > 0) {
+                rows.add(rowCount);
+            }
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        StatementSummary summary() {
+            return new StatementSummary(id, latency.getCount(), errors.sum(), rows.sum(), latency.getMean(TimeUnit.MILLISECONDS),
+                    latency.getPercentile(0.95, TimeUnit.MILLISECONDS), latency.getPercentile(0.99, TimeUnit.MILLISECONDS),
+                    latency.getMax(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Point in time summary of one statement, times in milliseconds.
+     */
+    public static class StatementSummary {
+        private final String id;
+        private final long count;
+        private final long errors;
+        private final long rows;
+        private final double meanMillis;
+        private final double p95Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+
+        StatementSummary(String id, long count, long errors, long rows, double meanMillis, double p95Millis, double p99Millis, double maxMillis) {
+            this.id = id;
+            this.count = count;
+            this.errors = errors;
+            this.rows = rows;
+            this.meanMillis = meanMillis;
+            this.p95Millis = p95Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        public double getP95Millis() {
+            return p95Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+    }
+
+    /**
+     * A statement that took longer than the slow statement threshold.
+     */
+    public static class SlowStatement {
+        private final String id;
+        private final String sql;
+        private final double elapsedMillis;
+        private final long timestamp;
+
+        SlowStatement(MappedStatement mappedStatement, Object parameter, long nanos) {
+            this.id = mappedStatement.getId();
+            this.sql = resolveSql(mappedStatement, parameter);
+            this.elapsedMillis = (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+            this.timestamp = System.currentTimeMillis();
+        }
+
+        private static String resolveSql(MappedStatement mappedStatement, Object parameter) {
+            try {
+                return mappedStatement.getBoundSql(parameter).getSql();
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public double getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+}
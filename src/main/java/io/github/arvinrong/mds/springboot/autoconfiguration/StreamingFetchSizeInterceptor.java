@@ -0,0 +1,63 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.*;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * Applies the fetch size of a {@link StreamingSqlReader} to the statement it prepares.
+ */
+@Intercepts({@Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class})})
+class StreamingFetchSizeInterceptor implements Interceptor {
+    static final StreamingFetchSizeInterceptor INSTANCE = new StreamingFetchSizeInterceptor();
+
+    private static final ThreadLocal<Integer> FETCH_SIZE = new ThreadLocal<>();
+
+    private StreamingFetchSizeInterceptor() {
+    }
+
+    static void begin(int fetchSize) {
+        FETCH_SIZE.set(fetchSize);
+    }
+
+    static void end() {
+        FETCH_SIZE.remove();
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Statement statement = (Statement) invocation.proceed();
+        Integer fetchSize = FETCH_SIZE.get();
+        if (fetchSize != null) {
+            statement.setFetchSize(fetchSize);
+        }
+        return statement;
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return target instanceof StatementHandler && FETCH_SIZE.get() != null ? Plugin.wrap(target, this) : target;
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+}
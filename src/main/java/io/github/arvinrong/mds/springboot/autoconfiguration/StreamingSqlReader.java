@@ -0,0 +1,214 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streams the rows of a select through a Mybatis {@link Cursor}, registered as "{name}StreamingSqlReader".
+ */
+public class StreamingSqlReader {
+    private static final Log logger = LogFactory.getLog(StreamingSqlReader.class);
+    public static final String BEAN_NAME_SUFFIX = "StreamingSqlReader";
+    static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final String name;
+    private final SqlSessionTemplate sqlSessionTemplate;
+    private final int fetchSize;
+    private volatile Integer vendorFetchSize;
+
+    StreamingSqlReader(String name, SqlSessionTemplate sqlSessionTemplate, int fetchSize) {
+        this.name = name;
+        this.sqlSessionTemplate = sqlSessionTemplate;
+        this.fetchSize = fetchSize;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public <T> Stream<T> stream(String statement) {
+        return stream(statement, null, RowBounds.DEFAULT);
+    }
+
+    public <T> Stream<T> stream(String statement, Object parameter) {
+        return stream(statement, parameter, RowBounds.DEFAULT);
+    }
+
+    /**
+     * Executes the select and returns its rows as a stream to be closed after use.
+     */
+    public <T> Stream<T> stream(String statement, Object parameter, RowBounds rowBounds) {
+        SqlSessionFactory sqlSessionFactory = sqlSessionTemplate.getSqlSessionFactory();
+        MappedStatement mappedStatement = sqlSessionFactory.getConfiguration().getMappedStatement(statement);
+        if (mappedStatement.getResultSetType() != null && mappedStatement.getResultSetType() != ResultSetType.FORWARD_ONLY) {
+            throw new IllegalStateException("============ Failed to stream " + statement + " of DataSource: " + name
+                    + ", streaming requires a forward only result set but " + mappedStatement.getResultSetType() + " is declared");
+        }
+        OpenCursor<T> openCursor = new OpenCursor<>(sqlSessionFactory.openSession(ExecutorType.SIMPLE, false),
+                sqlSessionFactory.getConfiguration().getEnvironment().getDataSource());
+        try {
+            openCursor.begin();
+            StreamingFetchSizeInterceptor.begin(getVendorFetchSize(openCursor.connection));
+            try {
+                openCursor.cursor = openCursor.session.selectCursor(statement, parameter, rowBounds);
+            } finally {
+                StreamingFetchSizeInterceptor.end();
+            }
+        } catch (RuntimeException | SQLException e) {
+            openCursor.close(false);
+            throw translate(e);
+        }
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(openCursor, Spliterator.ORDERED);
+        return StreamSupport.stream(spliterator, false).onClose(() -> openCursor.close(true));
+    }
+
+    /**
+     * Fetch size making the driver stream, Integer.MIN_VALUE for MySQL without server side cursors.
+     */
+    private int getVendorFetchSize(Connection connection) throws SQLException {
+        Integer size = vendorFetchSize;
+        if (size == null) {
+            String url = connection.getMetaData().getURL();
+            boolean mysqlStreaming = url != null && DatabaseDriver.fromJdbcUrl(url) == DatabaseDriver.MYSQL
+                    && !url.toLowerCase().contains("usecursorfetch=true");
+            size = mysqlStreaming ? Integer.MIN_VALUE : Math.max(1, fetchSize);
+            vendorFetchSize = size;
+        }
+        return size;
+    }
+
+    private RuntimeException translate(Exception e) {
+        PersistenceException persistenceException;
+        if (e instanceof PersistenceException) {
+            persistenceException = (PersistenceException) e;
+        } else if (e instanceof SQLException || e.getCause() instanceof SQLException) {
+            persistenceException = new PersistenceException(e instanceof SQLException ? e : e.getCause());
+        } else {
+            return (RuntimeException) e;
+        }
+        DataAccessException translated = sqlSessionTemplate.getPersistenceExceptionTranslator().translateExceptionIfPossible(persistenceException);
+        return translated != null ? translated : persistenceException;
+    }
+
+    /**
+     * Rows of one stream and the session, connection and transaction they are read with.
+     */
+    private class OpenCursor<T> implements Iterator<T> {
+        private final SqlSession session;
+        private final DataSource dataSource;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private Connection connection;
+        private boolean ownTransaction;
+        private Cursor<T> cursor;
+        private Iterator<T> rows;
+
+        OpenCursor(SqlSession session, DataSource dataSource) {
+            this.session = session;
+            this.dataSource = dataSource;
+        }
+
+        void begin() throws SQLException {
+            connection = session.getConnection();
+            if (!DataSourceUtils.isConnectionTransactional(connection, dataSource) && connection.getAutoCommit()) {
+                connection.setAutoCommit(false);
+                ownTransaction = true;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed.get()) {
+                return false;
+            }
+            boolean hasNext;
+            try {
+                if (rows == null) {
+                    rows = cursor.iterator();
+                }
+                hasNext = rows.hasNext();
+            } catch (RuntimeException e) {
+                close(false);
+                throw translate(e);
+            }
+            if (!hasNext) {
+                close(true);
+            }
+            return hasNext;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return rows.next();
+        }
+
+        /**
+         * Closes the cursor before the transaction ends, MySQL refuses other statements meanwhile.
+         */
+        void close(boolean succeeded) {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                if (cursor != null) {
+                    cursor.close();
+                }
+                if (ownTransaction) {
+                    try {
+                        if (succeeded) {
+                            connection.commit();
+                        } else {
+                            connection.rollback();
+                        }
+                    } finally {
+                        connection.setAutoCommit(true);
+                    }
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to end the streaming query of DataSource: " + name, e);
+            } finally {
+                session.close();
+            }
+        }
+    }
+}
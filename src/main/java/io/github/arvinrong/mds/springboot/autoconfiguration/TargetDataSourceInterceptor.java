@@ -0,0 +1,79 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotationUtils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Pushes the datasource name of {@link TargetDataSource} for the duration of the call.
+ */
+public class TargetDataSourceInterceptor implements MethodInterceptor {
+    private static final String NONE = "";
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Method, String>> cache = new ConcurrentHashMap<>();
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        String dataSourceName = getDataSourceName(invocation);
+        if (dataSourceName == NONE) {
+            return invocation.proceed();
+        }
+        MultiDataSourceContextHolder.push(dataSourceName);
+        try {
+            return invocation.proceed();
+        } finally {
+            MultiDataSourceContextHolder.pop();
+        }
+    }
+
+    private String getDataSourceName(MethodInvocation invocation) {
+        Method method = invocation.getMethod();
+        Class<?> targetClass = invocation.getThis() != null ? invocation.getThis().getClass() : method.getDeclaringClass();
+        ConcurrentMap<Method, String> methods = cache.get(targetClass);
+        if (methods == null) {
+            methods = new ConcurrentHashMap<>();
+            ConcurrentMap<Method, String> existing = cache.putIfAbsent(targetClass, methods);
+            if (existing != null) {
+                methods = existing;
+            }
+        }
+        String dataSourceName = methods.get(method);
+        if (dataSourceName == null) {
+            dataSourceName = resolveDataSourceName(method, targetClass);
+            methods.put(method, dataSourceName);
+        }
+        return dataSourceName;
+    }
+
+    private String resolveDataSourceName(Method method, Class<?> targetClass) {
+        Method specificMethod = AopUtils.getMostSpecificMethod(method, targetClass);
+        TargetDataSource targetDataSource = AnnotationUtils.findAnnotation(specificMethod, TargetDataSource.class);
+        if (targetDataSource == null) {
+            targetDataSource = AnnotationUtils.findAnnotation(method, TargetDataSource.class);
+        }
+        if (targetDataSource == null) {
+            targetDataSource = AnnotationUtils.findAnnotation(targetClass, TargetDataSource.class);
+        }
+        // Interned so that callers can compare against NONE by reference.
+        return targetDataSource != null ? targetDataSource.value().intern() : NONE;
+    }
+}
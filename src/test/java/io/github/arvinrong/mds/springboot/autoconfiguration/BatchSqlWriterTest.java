@@ -0,0 +1,172 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchSqlWriterTest {
+    private static ConfigurableApplicationContext context;
+    private static SqlSessionFactory sqlSessionFactory;
+    private static SqlSessionTemplate template;
+    private ScheduledExecutorService scheduler;
+
+    @BeforeClass
+    public static void start() {
+        context = new SpringApplicationBuilder(TestApplication.class).web(false).properties(
+                "spring.datasource.url=jdbc:h2:mem:batching",
+                "system.db.data-sources[0].name=events",
+                "system.db.data-sources[0].url=jdbc:h2:mem:events;INIT=create table if not exists event(id bigint primary key)",
+                "system.db.data-sources[0].type=com.zaxxer.hikari.HikariDataSource",
+                "system.db.data-sources[0].executor-type=batch").run();
+        sqlSessionFactory = context.getBean("eventsSqlSessionFactory", SqlSessionFactory.class);
+        template = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.SIMPLE);
+    }
+
+    @AfterClass
+    public static void stop() {
+        context.close();
+    }
+
+    @Before
+    public void clear() {
+        template.delete("events.clear");
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void stopScheduler() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void batchDataSourceGetsAWriter() {
+        assertTrue(context.containsBean("events" + BatchSqlWriter.BEAN_NAME_SUFFIX));
+    }
+
+    @Test
+    public void flushesOnceTheBatchIsFull() {
+        BatchSqlWriter writer = new BatchSqlWriter("events", sqlSessionFactory, 3, 0, scheduler);
+        writer.insert("events.add", 1L);
+        writer.insert("events.add", 2L);
+        assertEquals(2, writer.getPendingCount());
+        assertEquals(0, count());
+        writer.insert("events.add", 3L);
+        assertEquals(0, writer.getPendingCount());
+        assertEquals(3, count());
+    }
+
+    @Test
+    public void flushesOnceTheIntervalHasPassed() throws InterruptedException {
+        BatchSqlWriter writer = new BatchSqlWriter("events", sqlSessionFactory, 100, 50, scheduler);
+        writer.insert("events.add", 1L);
+        awaitFlush(writer);
+        // The batch is taken before it is committed, the update counts follow the commit.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!writer.getUpdateCounts().containsKey("events.add") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, count());
+    }
+
+    @Test
+    public void flushReturnsTheUpdateCountsPerStatement() {
+        BatchSqlWriter writer = new BatchSqlWriter("events", sqlSessionFactory, 100, 0, scheduler);
+        writer.insert("events.add", 1L);
+        writer.insert("events.add", 2L);
+        writer.delete("events.remove", 1L);
+        writer.delete("events.remove", 3L);
+        Map<String, int[]> counts = writer.flush();
+        assertArrayEquals(new int[]{1, 1}, counts.get("events.add"));
+        assertArrayEquals(new int[]{1, 0}, counts.get("events.remove"));
+        assertEquals(Long.valueOf(2), writer.getUpdateCounts().get("events.add"));
+        assertEquals(Long.valueOf(1), writer.getUpdateCounts().get("events.remove"));
+        assertEquals(1, count());
+    }
+
+    @Test
+    public void flushInsideATransactionOutlivesItsRollback() {
+        BatchSqlWriter writer = new BatchSqlWriter("events", sqlSessionFactory, 2, 0, scheduler);
+        new TransactionTemplate(context.getBean("eventsTransactionManager", PlatformTransactionManager.class)).execute(status -> {
+            template.insert("events.add", 1L);
+            writer.insert("events.add", 2L);
+            writer.insert("events.add", 3L);
+            status.setRollbackOnly();
+            return null;
+        });
+        assertEquals(2, count());
+    }
+
+    @Test
+    public void failedTimedFlushIsRethrownByTheNextCall() throws InterruptedException {
+        BatchSqlWriter writer = new BatchSqlWriter("events", sqlSessionFactory, 100, 50, scheduler);
+        writer.insert("events.add", 1L);
+        writer.insert("events.add", 1L);
+        awaitFlush(writer);
+        // The failure is recorded right after the failed batch has been taken.
+        Thread.sleep(200);
+        try {
+            writer.insert("events.add", 2L);
+            fail("The failure of the timed flush was not reported");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Timed flush of BatchSqlWriter events failed"));
+        }
+        assertEquals(0, writer.getPendingCount());
+        assertEquals(0, count());
+        writer.insert("events.add", 2L);
+        writer.flush();
+        assertEquals(1, count());
+    }
+
+    private static void awaitFlush(BatchSqlWriter writer) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (writer.getPendingCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, writer.getPendingCount());
+    }
+
+    private static int count() {
+        return template.<Integer>selectOne("events.count");
+    }
+
+    @Configuration
+    @EnableAutoConfiguration
+    static class TestApplication {
+    }
+}
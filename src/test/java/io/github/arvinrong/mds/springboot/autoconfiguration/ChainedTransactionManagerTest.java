@@ -0,0 +1,213 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.HeuristicCompletionException;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.UnexpectedRollbackException;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChainedTransactionManagerTest {
+    private final List<String> commits = new CopyOnWriteArrayList<>();
+    private final RecordingDataSource first = new RecordingDataSource("first");
+    private final RecordingDataSource second = new RecordingDataSource("second");
+    private final ChainedTransactionManager chain = new ChainedTransactionManager("chain", Arrays.asList("first", "second"),
+            Arrays.asList(new DataSourceTransactionManager(first), new DataSourceTransactionManager(second)));
+    private final TransactionTemplate transaction = new TransactionTemplate(chain);
+
+    @Before
+    public void createTables() {
+        for (RecordingDataSource dataSource : Arrays.asList(first, second)) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource.getTargetDataSource());
+            jdbcTemplate.execute("create table if not exists item(id int primary key)");
+            jdbcTemplate.execute("delete from item");
+        }
+    }
+
+    @Test
+    public void membersCommitInReverseOrder() {
+        transaction.execute(status -> insert(first, 1) + insert(second, 1));
+        assertEquals(Arrays.asList("second", "first"), commits);
+        assertEquals(1, count(first));
+        assertEquals(1, count(second));
+    }
+
+    @Test
+    public void failedCommitRollsBackTheMembersNotCommittedYet() {
+        second.failCommit = true;
+        try {
+            transaction.execute(status -> insert(first, 1) + insert(second, 1));
+            fail("The failed commit was not reported");
+        } catch (TransactionSystemException e) {
+            assertEquals("Commit of second failed", e.getCause().getMessage());
+        }
+        assertTrue(commits.isEmpty());
+        assertEquals(0, count(first));
+        assertEquals(0, count(second));
+    }
+
+    @Test
+    public void failedCommitAfterACommittedMemberIsHeuristic() {
+        first.failCommit = true;
+        try {
+            transaction.execute(status -> insert(first, 1) + insert(second, 1));
+            fail("The failed commit was not reported");
+        } catch (HeuristicCompletionException e) {
+            assertEquals(HeuristicCompletionException.STATE_MIXED, e.getOutcomeState());
+        }
+        assertEquals(Arrays.asList("second"), commits);
+        assertEquals(0, count(first));
+        assertEquals(1, count(second));
+    }
+
+    @Test
+    public void untouchedMemberBorrowsNoConnection() {
+        transaction.execute(status -> insert(second, 1));
+        assertEquals(0, first.connections.get());
+        assertEquals(1, second.connections.get());
+        assertEquals(Arrays.asList("second"), commits);
+    }
+
+    @Test
+    public void participantMarkingRollbackOnlyRollsBackTheChain() {
+        TransactionTemplate participant = new TransactionTemplate(new DataSourceTransactionManager(first));
+        try {
+            transaction.execute(status -> {
+                insert(second, 1);
+                return participant.execute(inner -> {
+                    insert(first, 1);
+                    inner.setRollbackOnly();
+                    return null;
+                });
+            });
+            fail("The rollback of the chain was not reported");
+        } catch (UnexpectedRollbackException e) {
+            // expected
+        }
+        assertTrue(commits.isEmpty());
+        assertEquals(0, count(first));
+        assertEquals(0, count(second));
+    }
+
+    @Test
+    public void mybatisSessionIsSynchronizedOnceForTheChain() throws Exception {
+        SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+        factoryBean.setDataSource(first);
+        SqlSessionFactory sqlSessionFactory = factoryBean.getObject();
+        sqlSessionFactory.getConfiguration().addMapper(ItemMapper.class);
+        ItemMapper mapper = new SqlSessionTemplate(sqlSessionFactory).getMapper(ItemMapper.class);
+        AtomicInteger beforeCommit = new AtomicInteger();
+        AtomicInteger afterCompletion = new AtomicInteger();
+
+        transaction.execute(status -> {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    beforeCommit.incrementAndGet();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    afterCompletion.incrementAndGet();
+                }
+            });
+            mapper.insert(1);
+            assertTrue(TransactionSynchronizationManager.hasResource(sqlSessionFactory));
+            return mapper.insert(2) + insert(second, 1);
+        });
+        assertFalse(TransactionSynchronizationManager.hasResource(sqlSessionFactory));
+        assertEquals(1, beforeCommit.get());
+        assertEquals(1, afterCompletion.get());
+        assertEquals(Arrays.asList("second", "first"), commits);
+        assertEquals(2, count(first));
+    }
+
+    private static int insert(RecordingDataSource dataSource, int id) {
+        return new JdbcTemplate(dataSource).update("insert into item values (?)", id);
+    }
+
+    private static int count(RecordingDataSource dataSource) {
+        return new JdbcTemplate(dataSource.getTargetDataSource()).queryForObject("select count(*) from item", Integer.class);
+    }
+
+    interface ItemMapper {
+        @Insert("insert into item values (#{id})")
+        int insert(int id);
+    }
+
+    /**
+     * Counts the connections taken from the database and records the commits, rejecting them on request.
+     */
+    private class RecordingDataSource extends DelegatingDataSource {
+        private final String name;
+        private final AtomicInteger connections = new AtomicInteger();
+        private volatile boolean failCommit;
+
+        RecordingDataSource(String name) {
+            this.name = name;
+            JdbcDataSource database = new JdbcDataSource();
+            database.setURL("jdbc:h2:mem:chain_" + name + ";DB_CLOSE_DELAY=-1");
+            setTargetDataSource(database);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            connections.incrementAndGet();
+            Connection connection = super.getConnection();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                if ("commit".equals(method.getName())) {
+                    if (failCommit) {
+                        // Like a database rejecting the commit, the work of the transaction is lost.
+                        connection.rollback();
+                        throw new SQLException("Commit of " + name + " failed");
+                    }
+                    commits.add(name);
+                }
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getTargetException();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DeferredDefaultsDataSourceProxyTest {
+
+    @Test
+    public void autoCommitComesFromTheHikariConfiguration() {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setAutoCommit(false);
+        assertEquals(Boolean.FALSE, proxy(pool).defaultAutoCommit());
+    }
+
+    @Test
+    public void autoCommitComesFromTheTomcatConfiguration() {
+        org.apache.tomcat.jdbc.pool.DataSource pool = new org.apache.tomcat.jdbc.pool.DataSource();
+        pool.setDefaultAutoCommit(false);
+        assertEquals(Boolean.FALSE, proxy(pool).defaultAutoCommit());
+    }
+
+    @Test
+    public void autoCommitIsAssumedUntilALazyPoolExists() {
+        LazyInitializingDataSource lazy = new LazyInitializingDataSource("lazy", () -> {
+            throw new AssertionError("The pool was created");
+        });
+        assertEquals(Boolean.TRUE, proxy(lazy).defaultAutoCommit());
+    }
+
+    private static DeferredDefaultsDataSourceProxy proxy(javax.sql.DataSource target) {
+        DeferredDefaultsDataSourceProxy proxy = new DeferredDefaultsDataSourceProxy();
+        proxy.setTargetDataSource(target);
+        return proxy;
+    }
+}
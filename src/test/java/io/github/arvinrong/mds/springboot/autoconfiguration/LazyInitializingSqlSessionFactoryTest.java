@@ -0,0 +1,75 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mybatis.spring.annotation.MapperScan;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LazyInitializingSqlSessionFactoryTest {
+    private static ConfigurableApplicationContext context;
+
+    @BeforeClass
+    public static void start() {
+        context = new SpringApplicationBuilder(TestApplication.class).web(false).properties(
+                "spring.datasource.url=jdbc:h2:mem:eager",
+                "system.db.data-sources[0].name=lazy",
+                "system.db.data-sources[0].url=jdbc:h2:mem:lazy;INIT=create table if not exists item(id int)\\;insert into item values(1)",
+                "system.db.data-sources[0].type=com.zaxxer.hikari.HikariDataSource",
+                "system.db.data-sources[0].lazy=true").run();
+    }
+
+    @AfterClass
+    public static void stop() {
+        context.close();
+    }
+
+    @Test
+    public void scannedMapperLeavesThePoolUncreatedUntilUsed() {
+        LazyInitializingDataSource dataSource = context.getBean("lazy", LazyInitializingDataSource.class);
+        LazyInitializingSqlSessionFactory sqlSessionFactory = context.getBean("lazySqlSessionFactory", LazyInitializingSqlSessionFactory.class);
+        ItemMapper mapper = context.getBean(ItemMapper.class);
+        assertFalse(dataSource.isInitialized());
+        assertFalse(sqlSessionFactory.isInitialized());
+
+        assertEquals(1, mapper.count());
+        assertTrue(dataSource.isInitialized());
+        assertTrue(sqlSessionFactory.getConfiguration().hasMapper(ItemMapper.class));
+    }
+
+    @Mapper
+    public interface ItemMapper {
+        @Select("select count(*) from item")
+        int count();
+    }
+
+    @Configuration
+    @EnableAutoConfiguration
+    @MapperScan(basePackageClasses = LazyInitializingSqlSessionFactoryTest.class, annotationClass = Mapper.class, sqlSessionTemplateRef = "lazySqlSessionTemplate")
+    static class TestApplication {
+    }
+}
@@ -0,0 +1,117 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class MapperGroupTest {
+    private static final String SCHEMA = "INIT=create table customer(id int primary key, name varchar(20))\\;"
+            + "create table orders(id int primary key, customer_id int)\\;insert into orders values(1, 1)\\;";
+
+    private static ConfigurableApplicationContext context;
+
+    @BeforeClass
+    public static void start() {
+        context = new SpringApplicationBuilder(TestApplication.class).web(false).properties(
+                "spring.datasource.url=jdbc:h2:mem:main",
+                "mybatis.configuration.lazy-loading-enabled=true",
+                "system.db.data-sources[0].name=leader",
+                "system.db.data-sources[0].url=jdbc:h2:mem:leader;" + SCHEMA + "insert into customer values(1, 'leader')",
+                "system.db.data-sources[0].type=com.zaxxer.hikari.HikariDataSource",
+                "system.db.data-sources[0].mapper-group=orders",
+                "system.db.data-sources[1].name=member",
+                "system.db.data-sources[1].url=jdbc:h2:mem:member;" + SCHEMA + "insert into customer values(1, 'member')",
+                "system.db.data-sources[1].type=com.zaxxer.hikari.HikariDataSource",
+                "system.db.data-sources[1].mapper-group=orders").run();
+    }
+
+    @AfterClass
+    public static void stop() {
+        context.close();
+    }
+
+    @Test
+    public void memberStatementsBelongToTheMemberConfiguration() {
+        org.apache.ibatis.session.Configuration member = context.getBean("memberSqlSessionFactory", SqlSessionFactory.class).getConfiguration();
+        org.apache.ibatis.session.Configuration leader = context.getBean("leaderSqlSessionFactory", SqlSessionFactory.class).getConfiguration();
+        assertSame(member, member.getMappedStatement("orders.order").getConfiguration());
+        assertSame(leader.getResultMap("orders.order"), member.getResultMap("orders.order"));
+    }
+
+    @Test
+    public void lazyLoadAfterTheSessionClosedQueriesTheMember() {
+        Order order = context.getBean("memberSqlSessionTemplate", SqlSessionTemplate.class).selectOne("orders.order", 1);
+        assertEquals("member", order.getCustomer().getName());
+    }
+
+    @Configuration
+    @EnableAutoConfiguration
+    static class TestApplication {
+    }
+
+    public static class Order {
+        private int id;
+        private Customer customer;
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        public Customer getCustomer() {
+            return customer;
+        }
+
+        public void setCustomer(Customer customer) {
+            this.customer = customer;
+        }
+    }
+
+    public static class Customer {
+        private int id;
+        private String name;
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MultiDataSourceCacheTest {
+    private static ConfigurableApplicationContext context;
+
+    @BeforeClass
+    public static void start() {
+        context = new SpringApplicationBuilder(TestApplication.class).web(false).properties(
+                "spring.datasource.url=jdbc:h2:mem:caching",
+                "system.db.data-sources[0].name=cached",
+                "system.db.data-sources[0].url=jdbc:h2:mem:cached",
+                "system.db.data-sources[0].type=com.zaxxer.hikari.HikariDataSource",
+                "system.db.data-sources[0].cache.enabled=true",
+                "system.db.data-sources[0].cache.max-entries=3").run();
+    }
+
+    @AfterClass
+    public static void stop() {
+        context.close();
+    }
+
+    @Test
+    public void cacheElementAttributesOverrideTheSettings() {
+        MultiDataSourceCache sized = cache("sized");
+        for (int i = 0; i < 3; i++) {
+            sized.putObject(i, new ArrayList<>());
+        }
+        assertEquals(2, sized.getSize());
+        Object value = new ArrayList<>();
+        sized.putObject("value", value);
+        assertSame(value, sized.getObject("value"));
+    }
+
+    @Test
+    public void cacheElementWithoutAttributesKeepsTheSettings() {
+        MultiDataSourceCache unsized = cache("unsized");
+        for (int i = 0; i < 4; i++) {
+            unsized.putObject(i, new ArrayList<>());
+        }
+        assertEquals(3, unsized.getSize());
+        HashMap<String, String> value = new HashMap<>();
+        unsized.putObject("value", value);
+        assertNotSame(value, unsized.getObject("value"));
+        assertEquals(value, unsized.getObject("value"));
+    }
+
+    @Test
+    public void unsupportedEvictionFailsTheStartup() {
+        try {
+            new SpringApplicationBuilder(TestApplication.class).web(false).properties(
+                    "spring.datasource.url=jdbc:h2:mem:caching",
+                    "system.db.data-sources[0].name=fifo",
+                    "system.db.data-sources[0].url=jdbc:h2:mem:fifo",
+                    "system.db.data-sources[0].type=com.zaxxer.hikari.HikariDataSource",
+                    "system.db.data-sources[0].mapper-locations[0]=classpath:mybatis/unsupported/fifo.xml",
+                    "system.db.data-sources[0].cache.enabled=true").run().close();
+            fail("The FIFO eviction of the cache was accepted");
+        } catch (Exception e) {
+            Throwable cause = e;
+            while (cause.getCause() != null && !(cause instanceof IllegalStateException && cause.getMessage().contains("FIFO"))) {
+                cause = cause.getCause();
+            }
+            assertTrue(String.valueOf(cause.getMessage()), cause.getMessage().contains("eviction FIFO"));
+        }
+    }
+
+    private static MultiDataSourceCache cache(String namespace) {
+        for (MultiDataSourceCache cache : context.getBean(MybatisMultiDataSourceInitializer.class).getCaches("cached")) {
+            if (cache.getId().equals(namespace)) {
+                return cache;
+            }
+        }
+        throw new AssertionError("No cache " + namespace);
+    }
+
+    @Configuration
+    @EnableAutoConfiguration
+    static class TestApplication {
+    }
+}
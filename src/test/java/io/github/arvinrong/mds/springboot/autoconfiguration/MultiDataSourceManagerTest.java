@@ -0,0 +1,55 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MultiDataSourceManagerTest {
+
+    @Test
+    public void poolsAreClosedWithTheContext() {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(TestApplication.class).web(false).properties(
+                "spring.datasource.url=jdbc:h2:mem:managed",
+                "system.db.data-sources[0].name=configured",
+                "system.db.data-sources[0].url=jdbc:h2:mem:configured",
+                "system.db.data-sources[0].type=com.zaxxer.hikari.HikariDataSource").run();
+        MultiDataSourceProperties.CustomDataSource added = new MultiDataSourceProperties.CustomDataSource();
+        added.setName("added");
+        added.setUrl("jdbc:h2:mem:added");
+        added.setType(HikariDataSource.class);
+        HikariDataSource addedPool = (HikariDataSource) context.getBean(MultiDataSourceManager.class).addDataSource(added);
+        HikariDataSource configuredPool = context.getBean("configured", HikariDataSource.class);
+        assertFalse(addedPool.isClosed());
+        assertFalse(configuredPool.isClosed());
+
+        context.close();
+        assertTrue(addedPool.isClosed());
+        assertTrue(configuredPool.isClosed());
+    }
+
+    @Configuration
+    @EnableAutoConfiguration
+    static class TestApplication {
+    }
+}
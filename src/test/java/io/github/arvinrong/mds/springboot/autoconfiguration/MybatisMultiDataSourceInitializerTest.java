@@ -0,0 +1,89 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mybatis.spring.boot.autoconfigure.MybatisProperties;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class MybatisMultiDataSourceInitializerTest {
+    private static ConfigurableApplicationContext context;
+
+    @BeforeClass
+    public static void start() {
+        context = new SpringApplicationBuilder(TestApplication.class).web(false).properties(
+                "spring.datasource.url=jdbc:h2:mem:settings",
+                "mybatis.configuration.map-underscore-to-camel-case=true",
+                "mybatis.configuration-properties.shared=global",
+                "system.db.data-sources[0].name=alpha",
+                "system.db.data-sources[0].url=jdbc:h2:mem:alpha",
+                "system.db.data-sources[0].type=com.zaxxer.hikari.HikariDataSource",
+                "system.db.data-sources[0].mybatis.configuration-properties.table=alpha_table",
+                "system.db.data-sources[1].name=beta",
+                "system.db.data-sources[1].url=jdbc:h2:mem:beta",
+                "system.db.data-sources[1].type=com.zaxxer.hikari.HikariDataSource",
+                "system.db.data-sources[1].mybatis.configuration-properties.schema=beta_schema").run();
+    }
+
+    @AfterClass
+    public static void stop() {
+        context.close();
+    }
+
+    @Test
+    public void configurationPropertiesStayWithTheirDataSource() {
+        Properties alpha = variables("alphaSqlSessionFactory");
+        Properties beta = variables("betaSqlSessionFactory");
+        assertEquals("alpha_table", alpha.getProperty("table"));
+        assertFalse(alpha.containsKey("schema"));
+        assertEquals("beta_schema", beta.getProperty("schema"));
+        assertFalse(beta.containsKey("table"));
+        assertEquals("global", alpha.getProperty("shared"));
+        assertEquals("global", beta.getProperty("shared"));
+
+        Properties global = context.getBean(MybatisProperties.class).getConfiguration().getVariables();
+        assertFalse(global.containsKey("table"));
+        assertFalse(global.containsKey("schema"));
+        assertNotSame(global, alpha);
+    }
+
+    @Test
+    public void globalSettingsAreCopied() {
+        assertTrue(context.getBean("alphaSqlSessionFactory", SqlSessionFactory.class).getConfiguration().isMapUnderscoreToCamelCase());
+    }
+
+    private static Properties variables(String sqlSessionFactory) {
+        return context.getBean(sqlSessionFactory, SqlSessionFactory.class).getConfiguration().getVariables();
+    }
+
+    @Configuration
+    @EnableAutoConfiguration
+    static class TestApplication {
+    }
+}
@@ -0,0 +1,90 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.MetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PoolStatisticsTest {
+
+    @Test
+    public void onlyPoolsOfReadWriteGroupsAreTrackedWithoutMetrics() {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(TestApplication.class).web(false).properties(
+                "spring.datasource.url=jdbc:h2:mem:statistics",
+                "system.db.data-sources[0].name=plain",
+                "system.db.data-sources[0].url=jdbc:h2:mem:plain",
+                "system.db.data-sources[0].type=com.zaxxer.hikari.HikariDataSource",
+                "system.db.data-sources[1].name=writer",
+                "system.db.data-sources[1].url=jdbc:h2:mem:writer",
+                "system.db.data-sources[1].type=com.zaxxer.hikari.HikariDataSource",
+                "system.db.data-sources[2].name=reader",
+                "system.db.data-sources[2].url=jdbc:h2:mem:reader",
+                "system.db.data-sources[2].type=com.zaxxer.hikari.HikariDataSource",
+                "system.db.read-write-groups[0].name=splitting",
+                "system.db.read-write-groups[0].primary=writer",
+                "system.db.read-write-groups[0].replicas[0]=reader").run()) {
+            assertNull(context.getBean("plain", HikariDataSource.class).getMetricsTrackerFactory());
+            assertTrue(context.getBean("writer", HikariDataSource.class).getMetricsTrackerFactory() instanceof PoolStatistics.HikariPoolStatistics.TrackerFactory);
+            assertTrue(context.getBean("reader", HikariDataSource.class).getMetricsTrackerFactory() instanceof PoolStatistics.HikariPoolStatistics.TrackerFactory);
+        }
+    }
+
+    @Test
+    public void trackerChainsToTheFactoryOfThePool() throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(TestApplication.class).web(false).properties(
+                "spring.datasource.url=jdbc:h2:mem:statistics",
+                "system.db.metrics.enabled=true",
+                "system.db.metrics.jmx-enabled=false").run()) {
+            AtomicInteger acquired = new AtomicInteger();
+            MetricsTrackerFactory factory = (poolName, poolStats) -> new MetricsTracker() {
+                @Override
+                public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                    acquired.incrementAndGet();
+                }
+            };
+            MultiDataSourceProperties.CustomDataSource added = new MultiDataSourceProperties.CustomDataSource();
+            added.setName("tracked");
+            added.setUrl("jdbc:h2:mem:tracked");
+            added.setType(HikariDataSource.class);
+            HikariDataSource pool = (HikariDataSource) context.getBean(MultiDataSourceManager.class)
+                    .addDataSource(added, Collections.singletonMap("metrics-tracker-factory", factory));
+            int before = acquired.get();
+            try (Connection ignored = pool.getConnection()) {
+                assertEquals(before + 1, acquired.get());
+                assertEquals(1, PoolStatistics.of(pool).getActiveConnections());
+            }
+        }
+    }
+
+    @Configuration
+    @EnableAutoConfiguration
+    static class TestApplication {
+    }
+}
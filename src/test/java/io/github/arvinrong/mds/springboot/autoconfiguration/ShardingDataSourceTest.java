@@ -0,0 +1,185 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShardingDataSourceTest {
+    private static ConfigurableApplicationContext context;
+    private static ShardingDataSource accounts;
+    private static SqlSessionTemplate template;
+    private static TransactionTemplate transaction;
+
+    @BeforeClass
+    public static void start() {
+        context = new SpringApplicationBuilder(TestApplication.class).web(false).properties(
+                "spring.datasource.url=jdbc:h2:mem:sharding",
+                "system.db.data-sources[0].name=shard0",
+                "system.db.data-sources[0].url=jdbc:h2:mem:shard0;INIT=create table if not exists account(id bigint primary key)",
+                "system.db.data-sources[0].type=com.zaxxer.hikari.HikariDataSource",
+                "system.db.data-sources[0].mapper-group=accounts",
+                "system.db.data-sources[1].name=shard1",
+                "system.db.data-sources[1].url=jdbc:h2:mem:shard1;INIT=create table if not exists account(id bigint primary key)",
+                "system.db.data-sources[1].type=com.zaxxer.hikari.HikariDataSource",
+                "system.db.data-sources[1].mapper-group=accounts",
+                "system.db.sharding-groups[0].name=accounts",
+                "system.db.sharding-groups[0].shards=shard0,shard1").run();
+        accounts = context.getBean("accounts", ShardingDataSource.class);
+        template = context.getBean("accountsSqlSessionTemplate", SqlSessionTemplate.class);
+        transaction = new TransactionTemplate(context.getBean("accountsTransactionManager", PlatformTransactionManager.class));
+    }
+
+    @AfterClass
+    public static void stop() {
+        context.close();
+    }
+
+    @Before
+    public void clear() {
+        accounts.onShard(0L, () -> template.delete("accounts.clear"));
+        accounts.onShard(1L, () -> template.delete("accounts.clear"));
+    }
+
+    @Test
+    public void transactionStaysOnItsShard() {
+        transaction.execute(status -> {
+            accounts.onShard(2L, () -> template.insert("accounts.add", 2L));
+            return accounts.onShard(4L, () -> template.insert("accounts.add", 4L));
+        });
+        assertEquals(2, count(0L));
+    }
+
+    @Test
+    public void selectingAnotherShardInATransactionFails() {
+        try {
+            transaction.execute(status -> {
+                accounts.onShard(1L, () -> template.insert("accounts.add", 1L));
+                return accounts.onShard(2L, () -> template.insert("accounts.add", 2L));
+            });
+            fail("Selected another shard within a transaction.");
+        } catch (IllegalStateException e) {
+            assertEquals(0, count(0L));
+            assertEquals(0, count(1L));
+        }
+        // The binding ends with the transaction.
+        transaction.execute(status -> accounts.onShard(2L, () -> template.insert("accounts.add", 2L)));
+        assertEquals(1, count(0L));
+    }
+
+    @Test
+    public void newTransactionMaySelectAnotherShard() {
+        TransactionTemplate requiresNew = new TransactionTemplate(transaction.getTransactionManager());
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transaction.execute(status -> {
+            accounts.onShard(1L, () -> template.insert("accounts.add", 1L));
+            requiresNew.execute(inner -> accounts.onShard(2L, () -> template.insert("accounts.add", 2L)));
+            return accounts.onShard(3L, () -> template.insert("accounts.add", 3L));
+        });
+        assertEquals(1, count(0L));
+        assertEquals(2, count(1L));
+    }
+
+    @Test
+    public void scatterGatherMergesSortedShardsInOrder() {
+        List<String> merged;
+        try (Stream<String> results = accounts.scatterGather(
+                shard -> "shard0".equals(shard) ? Arrays.asList("1@shard0", "3@shard0", "5@shard0") : Arrays.asList("2@shard1", "3@shard1", "4@shard1"),
+                Comparator.comparing((String value) -> value.substring(0, 1)))) {
+            merged = results.collect(Collectors.toList());
+        }
+        assertEquals(Arrays.asList("1@shard0", "2@shard1", "3@shard0", "3@shard1", "4@shard1", "5@shard0"), merged);
+    }
+
+    @Test
+    public void closingTheStreamCancelsTheShards() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch interrupted = new CountDownLatch(2);
+        Stream<Object> results = accounts.scatterGather(shard -> block(started, interrupted));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        results.close();
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failingShardCancelsTheOthers() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        try (Stream<Object> results = accounts.scatterGather(shard -> {
+            if ("shard0".equals(shard)) {
+                awaitQuietly(started);
+                throw new IllegalArgumentException("shard0 failed");
+            }
+            return block(started, interrupted);
+        })) {
+            results.count();
+            fail("The failure of shard0 was not reported");
+        } catch (IllegalStateException e) {
+            assertEquals("shard0 failed", e.getCause().getMessage());
+        }
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<Object> block(CountDownLatch started, CountDownLatch interrupted) {
+        started.countDown();
+        try {
+            Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+        }
+        return Collections.emptyList();
+    }
+
+    private static int count(long shardKey) {
+        return accounts.onShard(shardKey, () -> template.<Integer>selectOne("accounts.count"));
+    }
+
+    @Configuration
+    @EnableAutoConfiguration
+    static class TestApplication {
+    }
+}
@@ -0,0 +1,109 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ShardingStrategiesTest {
+    private static final List<String> SHARDS = Arrays.asList("shard0", "shard1", "shard2", "shard3");
+
+    @Test
+    public void hashSendsEqualIntegralKeysToTheSameShard() {
+        ShardingStrategy hash = init(new ShardingStrategies.Hash(), SHARDS, new MultiDataSourceProperties.ShardingGroup());
+        for (Object key : Arrays.asList(42, 42L, (short) 42, "42", " 42 ", new BigInteger("42"), new BigDecimal("42"), new BigDecimal("42.00"))) {
+            assertEquals(String.valueOf(key), 2, hash.shardFor(key));
+        }
+        assertEquals(3, hash.shardFor(-1L));
+        assertEquals(3, hash.shardFor("-1"));
+        assertEquals(Math.floorMod(new BigDecimal("42.5").hashCode(), 4), hash.shardFor(new BigDecimal("42.5")));
+        assertEquals(Math.floorMod("abc".hashCode(), 4), hash.shardFor("abc"));
+    }
+
+    @Test
+    public void rangeBoundsStartTheNextShard() {
+        MultiDataSourceProperties.ShardingGroup group = new MultiDataSourceProperties.ShardingGroup();
+        group.setRangeBounds(Arrays.asList(100L, 200L, 300L));
+        ShardingStrategy range = init(new ShardingStrategies.Range(), SHARDS, group);
+        assertEquals(0, range.shardFor(Long.MIN_VALUE));
+        assertEquals(0, range.shardFor(99));
+        assertEquals(1, range.shardFor(100L));
+        assertEquals(1, range.shardFor("199"));
+        assertEquals(2, range.shardFor(new BigDecimal("200")));
+        assertEquals(3, range.shardFor(300));
+        assertEquals(3, range.shardFor(Long.MAX_VALUE));
+        try {
+            range.shardFor("abc");
+            fail("A non-numeric key was routed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rangeBoundsMustMatchTheShards() {
+        MultiDataSourceProperties.ShardingGroup group = new MultiDataSourceProperties.ShardingGroup();
+        group.setRangeBounds(Arrays.asList(100L, 200L));
+        init(new ShardingStrategies.Range(), SHARDS, group);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rangeBoundsMustAscend() {
+        MultiDataSourceProperties.ShardingGroup group = new MultiDataSourceProperties.ShardingGroup();
+        group.setRangeBounds(Arrays.asList(100L, 300L, 200L));
+        init(new ShardingStrategies.Range(), SHARDS, group);
+    }
+
+    @Test
+    public void lookupRoutesKnownKeysAndRejectsUnknownOnes() {
+        MultiDataSourceProperties.ShardingGroup group = new MultiDataSourceProperties.ShardingGroup();
+        Map<String, String> lookup = new HashMap<>();
+        lookup.put("eu", "shard2");
+        lookup.put("42", "shard1");
+        group.setLookup(lookup);
+        ShardingStrategy strategy = init(new ShardingStrategies.Lookup(), SHARDS, group);
+        assertEquals(2, strategy.shardFor("eu"));
+        assertEquals(1, strategy.shardFor(42L));
+        try {
+            strategy.shardFor("us");
+            fail("An unknown key was routed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void lookupOfAnUnknownShardFails() {
+        MultiDataSourceProperties.ShardingGroup group = new MultiDataSourceProperties.ShardingGroup();
+        group.setLookup(Collections.singletonMap("eu", "shard9"));
+        init(new ShardingStrategies.Lookup(), SHARDS, group);
+    }
+
+    private static ShardingStrategy init(ShardingStrategy strategy, List<String> shards, MultiDataSourceProperties.ShardingGroup group) {
+        strategy.init("group", shards, group);
+        return strategy;
+    }
+}
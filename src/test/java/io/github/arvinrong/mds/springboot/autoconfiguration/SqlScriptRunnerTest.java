@@ -0,0 +1,105 @@
+/*
+  Copyright 2018 Arvin Rong
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package io.github.arvinrong.mds.springboot.autoconfiguration;
+
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SqlScriptRunnerTest {
+
+    @Test
+    public void separatorsInQuotesAreKept() throws IOException {
+        assertEquals(Arrays.asList("insert into t values ('a;b', \"c;d\")", "insert into t values ('it''s;')"),
+                statements("insert into t values ('a;b', \"c;d\");\ninsert into t values ('it''s;');", ";"));
+    }
+
+    @Test
+    public void backslashEscapesInQuotesAreKept() throws IOException {
+        assertEquals(Arrays.asList("insert into t values ('it\\'s;', 'c:\\\\')", "select 1"),
+                statements("insert into t values ('it\\'s;', 'c:\\\\');select 1;", ";"));
+    }
+
+    @Test
+    public void commentsAreSkipped() throws IOException {
+        assertEquals(Arrays.asList("select 1", "select   2", "select '-- kept /* kept */'"),
+                statements("-- first; statement\nselect 1; /* block; comment */\nselect /* inline */ 2;\nselect '-- kept /* kept */';", ";"));
+    }
+
+    @Test
+    public void customSeparatorsSplitStatements() throws IOException {
+        assertEquals(Arrays.asList("create table t (id int);\ninsert into t values (1);", "select 1"),
+                statements("create table t (id int);\ninsert into t values (1);\nGO\nselect 1\nGO\n", "\nGO"));
+    }
+
+    @Test
+    public void statementsAfterAFailureInABatchRunOneByOne() throws Exception {
+        List<String> executed = new ArrayList<>();
+        Statement statement = proxy(Statement.class, (method, args) -> {
+            switch (method) {
+                case "executeBatch":
+                    // Stops at the second statement, like a driver not continuing after a failure.
+                    throw new BatchUpdateException(new int[]{1});
+                case "execute":
+                    executed.add((String) args[0]);
+                    return false;
+                default:
+                    return null;
+            }
+        });
+        DatabaseMetaData metaData = proxy(DatabaseMetaData.class, (method, args) -> "supportsBatchUpdates".equals(method) ? true : null);
+        Connection connection = proxy(Connection.class, (method, args) ->
+                "getMetaData".equals(method) ? metaData : "createStatement".equals(method) ? statement : null);
+
+        new SqlScriptRunner("scripts", ";", true, StandardCharsets.UTF_8).run(connection,
+                new ByteArrayResource("insert into t values (1);insert into t values (1);insert into t values (2);insert into t values (3);"
+                        .getBytes(StandardCharsets.UTF_8)));
+        assertEquals(Arrays.asList("insert into t values (2)", "insert into t values (3)"), executed);
+    }
+
+    private static List<String> statements(String script, String separator) throws IOException {
+        List<String> statements = new ArrayList<>();
+        try (SqlScriptRunner.StatementReader reader = new SqlScriptRunner.StatementReader(new StringReader(script), separator)) {
+            String sql;
+            while ((sql = reader.next()) != null) {
+                statements.add(sql);
+            }
+        }
+        return statements;
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> handler.invoke(method.getName(), args)));
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args) throws Exception;
+    }
+}